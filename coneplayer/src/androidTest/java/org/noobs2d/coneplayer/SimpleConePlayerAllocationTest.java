@@ -0,0 +1,98 @@
+package org.noobs2d.coneplayer;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that seek, play and pause don't allocate, neither on the calling thread nor on the
+ * playback thread, once the message pool is warm.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SimpleConePlayerAllocationTest {
+
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    private SimpleConePlayer player;
+
+    @Before
+    public void setUp() {
+        player = (SimpleConePlayer) ConePlayerFactory.newConePlayer(
+                InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        player.release();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void transportCommandsDoNotAllocate() throws InterruptedException {
+        runCommands(WARM_UP_ITERATIONS);
+        awaitPlaybackThread(new long[1], false);
+
+        final long[] playbackThreadAllocs = new long[1];
+        Handler playbackHandler = player.getPlaybackHandler();
+        Runnable resetCount = new Runnable() {
+            @Override
+            public void run() {
+                Debug.resetThreadAllocCount();
+            }
+        };
+
+        Debug.startAllocCounting();
+        try {
+            playbackHandler.post(resetCount);
+            Debug.resetThreadAllocCount();
+            runCommands(ITERATIONS);
+            long callerAllocs = Debug.getThreadAllocCount();
+            awaitPlaybackThread(playbackThreadAllocs, true);
+
+            assertEquals("allocations on the calling thread", 0, callerAllocs);
+            assertEquals("allocations on the playback thread", 0, playbackThreadAllocs[0]);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private void runCommands(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            player.seekTo(i);
+            player.play();
+            player.pause();
+        }
+    }
+
+    /**
+     * Waits until the playback thread has handled every command sent so far, and reads its
+     * allocation count.
+     */
+    @SuppressWarnings("deprecation")
+    private void awaitPlaybackThread(final long[] allocs, final boolean readCount)
+            throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        player.getPlaybackHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                if (readCount)
+                    allocs[0] = Debug.getThreadAllocCount();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,190 @@
+package org.noobs2d.coneplayer;
+
+import android.graphics.SurfaceTexture;
+import android.net.Uri;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.Surface;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Plays a playlist of two items and checks that the preloaded one, once swapped in, starts
+ * from its beginning and renders video.
+ * <p>
+ * Needs a video lasting a few seconds at least, given as an instrumentation argument:
+ * {@code -e videoUri file:///sdcard/video.mp4}. Skipped without it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SimpleConePlayerPreloadTest {
+
+    private static final String ARG_VIDEO_URI = "videoUri";
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 180;
+    /* the next item is preloaded as soon as the first one plays */
+    private static final long STANDBY_MS = 3000;
+    /* well below STANDBY_MS: the standby player must not have been playing meanwhile */
+    private static final long MAX_START_POSITION_MS = 1000;
+
+    @Test
+    public void swappedItemStartsFromBeginningWithVideo() throws InterruptedException {
+        String uri = InstrumentationRegistry.getArguments().getString(ARG_VIDEO_URI);
+        assumeNotNull(uri);
+        assumeTrue(Build.VERSION.SDK_INT >= 17);
+
+        FrameCounter frames = new FrameCounter(WIDTH, HEIGHT);
+        final SimpleConePlayer player = (SimpleConePlayer) ConePlayerFactory.newConePlayer(
+                InstrumentationRegistry.getTargetContext());
+        try {
+            final CountDownLatch firstItemPlaying = new CountDownLatch(1);
+            final CountDownLatch secondItemFirstFrame = new CountDownLatch(1);
+            final long[] startPositionMs = new long[1];
+            player.addPlayerStateChangeListener(new ConePlayer.PlayerStateChangeListener() {
+                @Override
+                public void onPlayerStateChanged(int state) {
+                    if (state == ConePlayer.STATE_PLAYING)
+                        firstItemPlaying.countDown();
+                }
+            });
+            player.addVideoListener(new ConePlayer.VideoListener() {
+                @Override
+                public void onVideoSizeChanged(int width, int height) {
+                }
+
+                @Override
+                public void onRenderedFirstFrame() {
+                    if (player.getPlaylistIndex() == 1) {
+                        startPositionMs[0] = player.getCurrentPosition();
+                        secondItemFirstFrame.countDown();
+                    }
+                }
+            });
+
+            player.setVideoSurface(frames.getSurface(), WIDTH, HEIGHT);
+            Media media = new Media(Uri.parse(uri));
+            player.prepare(Arrays.asList(media, media));
+            player.play();
+            assertTrue(firstItemPlaying.await(10, TimeUnit.SECONDS));
+            Thread.sleep(STANDBY_MS);
+
+            player.next();
+            assertTrue("no first frame after the swap",
+                    secondItemFirstFrame.await(10, TimeUnit.SECONDS));
+            assertTrue("swapped item started at " + startPositionMs[0] + " ms",
+                    startPositionMs[0] < MAX_START_POSITION_MS);
+
+            int framesAtSwap = frames.getCount();
+            Thread.sleep(1000);
+            assertTrue("no frame rendered after the swap", frames.getCount() > framesAtSwap);
+        } finally {
+            player.release();
+            frames.release();
+        }
+    }
+
+    /**
+     * Counts and consumes the frames rendered on a SurfaceTexture, on its own thread holding
+     * an EGL context.
+     */
+    private static final class FrameCounter implements SurfaceTexture.OnFrameAvailableListener {
+        private final HandlerThread thread = new HandlerThread("FrameCounter");
+        private final Handler handler;
+        private final AtomicInteger count = new AtomicInteger();
+        private EGLDisplay display;
+        private EGLContext context;
+        private EGLSurface eglSurface;
+        private SurfaceTexture texture;
+        private Surface surface;
+
+        FrameCounter(final int width, final int height) throws InterruptedException {
+            thread.start();
+            handler = new Handler(thread.getLooper());
+            final CountDownLatch ready = new CountDownLatch(1);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    setUp(width, height);
+                    ready.countDown();
+                }
+            });
+            assertTrue(ready.await(5, TimeUnit.SECONDS));
+        }
+
+        private void setUp(int width, int height) {
+            display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+            int[] version = new int[2];
+            EGL14.eglInitialize(display, version, 0, version, 1);
+            int[] configAttribs = {
+                    EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                    EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                    EGL14.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] configCount = new int[1];
+            EGL14.eglChooseConfig(display, configAttribs, 0, configs, 0, 1, configCount, 0);
+            context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                    new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+            eglSurface = EGL14.eglCreatePbufferSurface(display, configs[0],
+                    new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0);
+            EGL14.eglMakeCurrent(display, eglSurface, eglSurface, context);
+
+            int[] textures = new int[1];
+            GLES20.glGenTextures(1, textures, 0);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textures[0]);
+            texture = new SurfaceTexture(textures[0]);
+            texture.setDefaultBufferSize(width, height);
+            texture.setOnFrameAvailableListener(this);
+            surface = new Surface(texture);
+        }
+
+        @Override
+        public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+            surfaceTexture.updateTexImage();
+            count.incrementAndGet();
+        }
+
+        Surface getSurface() {
+            return surface;
+        }
+
+        int getCount() {
+            return count.get();
+        }
+
+        void release() {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    surface.release();
+                    texture.release();
+                    EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+                            EGL14.EGL_NO_CONTEXT);
+                    EGL14.eglDestroySurface(display, eglSurface);
+                    EGL14.eglDestroyContext(display, context);
+                    EGL14.eglTerminate(display);
+                    thread.quit();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.noobs2d.coneplayer;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Generates the trickplay of a real video and checks that every frame was grabbed, at a
+ * position inside its own slice, in order, and that no two frames are the same picture.
+ * <p>
+ * Needs a video whose pictures change along its whole length, such as a movie trailer,
+ * given as an instrumentation argument: {@code -e videoUri file:///sdcard/video.mp4}.
+ * Skipped without it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrickplayGeneratorTest {
+
+    private static final String ARG_VIDEO_URI = "videoUri";
+    private static final int FRAME_COUNT = 10;
+    private static final int TILE_WIDTH = 160;
+    private static final int TILE_HEIGHT = 90;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Test
+    public void framesDifferAndAreTimeOrdered() throws InterruptedException {
+        String uri = InstrumentationRegistry.getArguments().getString(ARG_VIDEO_URI);
+        assumeNotNull(uri);
+        assumeTrue(Build.VERSION.SDK_INT >= 17);
+
+        Trickplay trickplay = generate(Uri.parse(uri));
+        assertTrue("no trickplay", trickplay != null);
+        assertTrue(trickplay.isComplete());
+        assertEquals(FRAME_COUNT, trickplay.getExtractedCount());
+
+        long sliceMs = trickplay.getDurationMs() / FRAME_COUNT;
+        long previousMs = -1;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            long timeMs = trickplay.getExtractedTimeMs(i);
+            String frame = "frame " + i + " at " + timeMs + "ms";
+            assertTrue(frame, timeMs > previousMs);
+            assertTrue(frame, timeMs >= i * sliceMs);
+            assertTrue(frame, timeMs < (i + 1) * sliceMs);
+            previousMs = timeMs;
+        }
+
+        Bitmap[] tiles = new Bitmap[FRAME_COUNT];
+        for (int i = 0; i < FRAME_COUNT; i++)
+            tiles[i] = Bitmap.createBitmap(trickplay.getSprite(),
+                    i % trickplay.getColumns() * TILE_WIDTH,
+                    i / trickplay.getColumns() * TILE_HEIGHT, TILE_WIDTH, TILE_HEIGHT);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            for (int j = i + 1; j < FRAME_COUNT; j++)
+                assertFalse("frames " + i + " and " + j + " are the same",
+                        tiles[i].sameAs(tiles[j]));
+        }
+    }
+
+    private Trickplay generate(final Uri uri) throws InterruptedException {
+        final CountDownLatch complete = new CountDownLatch(1);
+        final Trickplay[] result = new Trickplay[1];
+        final TrickplayGenerator[] generator = new TrickplayGenerator[1];
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                generator[0] = new TrickplayGenerator(InstrumentationRegistry.getTargetContext(),
+                        FRAME_COUNT, TILE_WIDTH, TILE_HEIGHT, 4 * 1024 * 1024);
+                generator[0].generate(uri, 0, new TrickplayGenerator.Listener() {
+                    @Override
+                    public void onTrickplayUpdated(Trickplay trickplay) {
+                        if (trickplay.isComplete()) {
+                            result[0] = trickplay;
+                            complete.countDown();
+                        }
+                    }
+                });
+            }
+        });
+        try {
+            assertTrue("trickplay not generated",
+                    complete.await(FRAME_COUNT * 10, TimeUnit.SECONDS));
+            return result[0];
+        } finally {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    generator[0].release();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.noobs2d.coneplayer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the caching a media is opened with from the sessions recently played from the same
+ * host: the caching of a host grows after a session that stalled, and shrinks after a
+ * session long enough to be meaningful that played without any rebuffer. Fast sources
+ * converge to a short caching that starts quickly, flaky ones to a deeper buffer.
+ * <p>
+ * This class has no Android dependency so that it can be tuned offline, by replaying
+ * recorded sessions in the unit tests.
+ */
+public class CachingPolicy {
+
+    /**
+     * libvlc default for :network-caching.
+     */
+    public static final int DEFAULT_NETWORK_CACHING_MS = 1000;
+
+    /**
+     * libvlc default for :file-caching.
+     */
+    public static final int DEFAULT_FILE_CACHING_MS = 300;
+
+    public static final int MIN_CACHING_MS = 100;
+
+    public static final int MAX_CACHING_MS = 10000;
+
+    /**
+     * Sessions that played less than this without stalling say nothing about the source.
+     */
+    static final long MIN_CLEAN_PLAY_TIME_MS = 10000;
+
+    private static final int MAX_HOSTS = 64;
+    private static final int MAX_RECENT_SESSIONS = 64;
+
+    private final float stallRatioThreshold;
+    private final float increaseFactor;
+    private final float decreaseFactor;
+
+    private final LinkedHashMap<String, Integer> cachingByHost =
+            new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_HOSTS;
+                }
+            };
+    private final ArrayDeque<CachingSession> recentSessions = new ArrayDeque<>();
+
+    public CachingPolicy() {
+        this(0.01f, 2f, 0.8f);
+    }
+
+    /**
+     * @param stallRatioThreshold stall ratio above which a session grows the caching
+     * @param increaseFactor      caching multiplier after a stalled session
+     * @param decreaseFactor      caching multiplier after a clean session
+     */
+    public CachingPolicy(float stallRatioThreshold, float increaseFactor, float decreaseFactor) {
+        if (increaseFactor < 1f || decreaseFactor <= 0f || decreaseFactor > 1f)
+            throw new IllegalArgumentException("invalid factors");
+        this.stallRatioThreshold = stallRatioThreshold;
+        this.increaseFactor = increaseFactor;
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    /**
+     * Returns the caching to open a media from host with.
+     *
+     * @param host the host of the media, or null for a local media
+     */
+    public synchronized int getCachingMs(String host) {
+        Integer cachingMs = cachingByHost.get(key(host));
+        if (cachingMs != null)
+            return cachingMs;
+        return host != null ? DEFAULT_NETWORK_CACHING_MS : DEFAULT_FILE_CACHING_MS;
+    }
+
+    /**
+     * Returns the media option setting cachingMs for a media from host.
+     */
+    public static String getCachingOption(String host, int cachingMs) {
+        return (host != null ? ":network-caching=" : ":file-caching=") + cachingMs;
+    }
+
+    public synchronized void onSession(CachingSession session) {
+        if (recentSessions.size() == MAX_RECENT_SESSIONS)
+            recentSessions.removeFirst();
+        recentSessions.addLast(session);
+
+        int cachingMs = getCachingMs(session.host);
+        if (session.rebufferCount > 0 && session.getStallRatio() > stallRatioThreshold)
+            cachingMs = Math.round(cachingMs * increaseFactor);
+        else if (session.rebufferCount == 0 && session.playTimeMs >= MIN_CLEAN_PLAY_TIME_MS)
+            cachingMs = Math.round(cachingMs * decreaseFactor);
+        else
+            return;
+
+        cachingMs = Math.max(MIN_CACHING_MS, Math.min(MAX_CACHING_MS, cachingMs));
+        cachingByHost.put(key(session.host), cachingMs);
+    }
+
+    /**
+     * Returns the last sessions given to {@link #onSession}, oldest first, for instance to
+     * record a trace to replay offline.
+     */
+    public synchronized List<CachingSession> getRecentSessions() {
+        return new ArrayList<>(recentSessions);
+    }
+
+    private static String key(String host) {
+        return host != null ? host : "";
+    }
+}
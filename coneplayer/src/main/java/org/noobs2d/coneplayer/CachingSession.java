@@ -0,0 +1,85 @@
+package org.noobs2d.coneplayer;
+
+/**
+ * Buffering outcome of one playback session, as recorded by a player for
+ * {@link CachingPolicy}. Sessions can be written as one tab separated line with
+ * {@link #toString()} and read back with {@link #parse(String)}, which is the format of
+ * the traces replayed offline to tune the policy.
+ */
+public final class CachingSession {
+
+    private static final String LOCAL_HOST = "-";
+
+    /**
+     * Host of the media, or null for a local media.
+     */
+    public final String host;
+
+    /**
+     * The caching, in milliseconds, the media was opened with.
+     */
+    public final int cachingMs;
+
+    /**
+     * Time from opening to the start of playback.
+     */
+    public final long startupMs;
+
+    public final long playTimeMs;
+
+    public final int rebufferCount;
+
+    public final long stallTimeMs;
+
+    public CachingSession(String host,
+                          int cachingMs,
+                          long startupMs,
+                          long playTimeMs,
+                          int rebufferCount,
+                          long stallTimeMs) {
+        this.host = host;
+        this.cachingMs = cachingMs;
+        this.startupMs = startupMs;
+        this.playTimeMs = playTimeMs;
+        this.rebufferCount = rebufferCount;
+        this.stallTimeMs = stallTimeMs;
+    }
+
+    public float getStallRatio() {
+        long totalMs = stallTimeMs + playTimeMs;
+        return totalMs > 0 ? (float) stallTimeMs / totalMs : 0f;
+    }
+
+    /**
+     * Parses a line written by {@link #toString()}.
+     *
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static CachingSession parse(String line) {
+        String[] fields = line.trim().split("\t");
+        if (fields.length != 6)
+            throw new IllegalArgumentException("expected 6 fields: " + line);
+
+        try {
+            return new CachingSession(
+                    LOCAL_HOST.equals(fields[0]) ? null : fields[0],
+                    Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[2]),
+                    Long.parseLong(fields[3]),
+                    Integer.parseInt(fields[4]),
+                    Long.parseLong(fields[5]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("malformed session: " + line, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (host != null ? host : LOCAL_HOST)
+                + '\t' + cachingMs
+                + '\t' + startupMs
+                + '\t' + playTimeMs
+                + '\t' + rebufferCount
+                + '\t' + stallTimeMs;
+    }
+}
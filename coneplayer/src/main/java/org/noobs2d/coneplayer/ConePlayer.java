@@ -3,6 +3,8 @@ package org.noobs2d.coneplayer;
 import android.view.SurfaceView;
 import android.view.TextureView;
 
+import java.util.List;
+
 public interface ConePlayer {
 
     int STATE_IDLE = 1;
@@ -15,8 +17,36 @@ public interface ConePlayer {
 
     int STATE_ENDED = 5;
 
+    /**
+     * Waiting for data before playback can start or resume.
+     */
+    int STATE_BUFFERING = 6;
+
+    /**
+     * The media couldn't be opened or played. A new prepare is needed.
+     */
+    int STATE_ERROR = 7;
+
     void prepare(Media media);
 
+    /**
+     * Prepares a list of media played back to back. While an item plays, the next one is
+     * opened in advance so that the transition does not wait for it to open and buffer.
+     */
+    void prepare(List<Media> playlist);
+
+    void addToPlaylist(Media media);
+
+    /**
+     * Skips to the next item of the playlist, if any.
+     */
+    void next();
+
+    /**
+     * Returns the index of the current playlist item, or -1 if nothing is prepared.
+     */
+    int getPlaylistIndex();
+
     void play();
 
     void pause();
@@ -61,6 +91,42 @@ public interface ConePlayer {
 
     long getCurrentPosition();
 
+    /**
+     * Returns the buffering progress of the current media, in percent. It is 100 once enough
+     * data is buffered to play.
+     */
+    float getBuffering();
+
+    /**
+     * Returns how many times playback stalled to rebuffer since the media was prepared.
+     * Buffering before the first playback and after a seek is not counted.
+     */
+    int getRebufferCount();
+
+    /**
+     * Returns the total time spent stalled in rebuffers since the media was prepared.
+     */
+    long getRebufferDurationMs();
+
+    /**
+     * Returns the time spent stalled in rebuffers over the time spent playing or stalled,
+     * between 0 and 1.
+     */
+    float getStallRatio();
+
+    /**
+     * Registers a listener receiving the startup timeline of every prepared media, once its
+     * first frame is rendered.
+     */
+    void addStartupTimelineListener(StartupTimelineListener listener);
+
+    void removeStartupTimelineListener(StartupTimelineListener listener);
+
+    /**
+     * Returns the timelines of the last started media, most recent first.
+     */
+    List<StartupTimeline> getRecentStartupTimelines();
+
     interface VideoListener {
 
         void onVideoSizeChanged(int width, int height);
@@ -77,4 +143,9 @@ public interface ConePlayer {
 
         void onComplete();
     }
+
+    interface StartupTimelineListener {
+
+        void onStartupTimeline(StartupTimeline timeline);
+    }
 }
\ No newline at end of file
@@ -1,20 +1,154 @@
 package org.noobs2d.coneplayer;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
 import org.videolan.libvlc.LibVLC;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class ConePlayerFactory {
 
+    private static final String TAG = "ConePlayerFactory";
+
+    private static final LibVLCRegistry libVLCRegistry = new LibVLCRegistry();
+    private static final PlayerPool playerPool = new PlayerPool();
+    private static final CachingPolicy cachingPolicy = new CachingPolicy();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "ConePlayer:WarmUp");
+                }
+            });
+
+    public interface Callback {
+
+        void onConePlayerCreated(ConePlayer player);
+    }
+
     public static ConePlayer newConePlayer(Context context) {
+        return newConePlayer(context, getDefaultOptions());
+    }
+
+    /**
+     * Creates a player using libvlc options. Players created with the same options share
+     * a single LibVLC instance, which is destroyed when the last of them is released.
+     */
+    public static ConePlayer newConePlayer(Context context, List<String> options) {
+        long createdAtNs = System.nanoTime();
+        LibVLC libVLC = libVLCRegistry.acquire(context, options);
+        try {
+            PlayerPool.Entry entry = playerPool.acquire(libVLC);
+            SimpleConePlayer player = new SimpleConePlayer(entry.libVLC, entry.mediaPlayer,
+                    entry.playbackThread, playerPool, createdAtNs);
+            player.setCachingPolicy(cachingPolicy);
+            return player;
+        } finally {
+            libVLC.release();
+        }
+    }
+
+    /**
+     * Creates a player on a background thread, so that loading the native libraries and
+     * initializing libvlc never happen on the calling thread.
+     *
+     * @param callback called on the main thread with the new player
+     */
+    public static void newConePlayer(Context context, Callback callback) {
+        newConePlayer(context, getDefaultOptions(), callback);
+    }
+
+    public static void newConePlayer(final Context context,
+                                     final List<String> options,
+                                     final Callback callback) {
+        final Context applicationContext = context.getApplicationContext();
+        warmUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ConePlayer player = newConePlayer(applicationContext, options);
+                logLoadDurations();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onConePlayerCreated(player);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads libvlc and creates an idle player ahead of time, so that the next
+     * {@link #newConePlayer(Context)} call returns without any native setup. The idle player
+     * keeps libvlc loaded until it is used and released, or left idle for too long.
+     */
+    public static void warmUp(Context context) {
+        LibVLC libVLC = libVLCRegistry.acquire(context, getDefaultOptions());
+        try {
+            playerPool.warmUp(libVLC, 1);
+        } finally {
+            libVLC.release();
+        }
+    }
+
+    /**
+     * Same as {@link #warmUp(Context)}, but done on a background thread.
+     *
+     * @return a future completed once the idle player is ready
+     */
+    public static Future<?> warmUpAsync(Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        return warmUpExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(applicationContext);
+                logLoadDurations();
+            }
+        });
+    }
+
+    /**
+     * Returns the caching policy shared by the players of this factory, which adapts the
+     * caching of every host to the buffering observed on the previous sessions.
+     */
+    public static CachingPolicy getCachingPolicy() {
+        return cachingPolicy;
+    }
+
+    private static void logLoadDurations() {
+        Log.v(TAG, "libvlc load (us):"
+                + " anw=" + loadDurationUs(LibVLC.LoadPhase.Anw)
+                + " iomx=" + loadDurationUs(LibVLC.LoadPhase.Iomx)
+                + " compat=" + loadDurationUs(LibVLC.LoadPhase.Compat)
+                + " vlc=" + loadDurationUs(LibVLC.LoadPhase.Vlc)
+                + " vlcjni=" + loadDurationUs(LibVLC.LoadPhase.VlcJni)
+                + " new=" + loadDurationUs(LibVLC.LoadPhase.NativeNew));
+    }
+
+    private static long loadDurationUs(int phase) {
+        return LibVLC.getLoadDuration(phase) / 1000;
+    }
+
+    private static List<String> getDefaultOptions() {
         ArrayList<String> options = new ArrayList<>();
         options.add("--aout=opensles");
         options.add("--audio-time-stretch");
-        LibVLC libVLC = new LibVLC(context, options);
-        Log.v("VLC", "Version: " + libVLC.version() + " Compiler: " + libVLC.compiler());
-        return new SimpleConePlayer(libVLC);
+        return options;
     }
-}
\ No newline at end of file
+}
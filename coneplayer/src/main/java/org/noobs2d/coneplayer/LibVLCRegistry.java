@@ -0,0 +1,74 @@
+package org.noobs2d.coneplayer;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.videolan.libvlc.LibVLC;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares one {@link LibVLC} per option set.
+ * <p>
+ * The registry doesn't own any reference: every {@link #acquire} returns a retained instance
+ * that the caller must release, so the VLC core is destroyed as soon as its last user releases
+ * it, and the next acquisition creates a new one.
+ */
+final class LibVLCRegistry {
+
+    private final HashMap<String, LibVLC> instances = new HashMap<>();
+
+    synchronized LibVLC acquire(Context context, List<String> options) {
+        String key = normalize(options);
+        LibVLC libVLC = instances.get(key);
+        if (libVLC != null && libVLC.retain())
+            return libVLC;
+
+        removeReleased();
+        libVLC = new LibVLC(context.getApplicationContext(), new ArrayList<>(options));
+        Log.v("VLC", "Version: " + libVLC.version() + " Compiler: " + libVLC.compiler());
+        instances.put(key, libVLC);
+        return libVLC;
+    }
+
+    private void removeReleased() {
+        Iterator<Map.Entry<String, LibVLC>> iterator = instances.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().isReleased())
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Joins "--option value" pairs into "--option=value" and sorts the result, so that the
+     * same options given in another order share the same instance.
+     */
+    static String normalize(List<String> options) {
+        ArrayList<String> normalized = new ArrayList<>(options.size());
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i).trim();
+            if (option.isEmpty())
+                continue;
+
+            if (option.startsWith("--") && option.indexOf('=') == -1 && i + 1 < options.size()) {
+                String value = options.get(i + 1).trim();
+                if (!value.startsWith("-")) {
+                    option = option + "=" + value;
+                    i++;
+                }
+            }
+            normalized.add(option);
+        }
+        Collections.sort(normalized);
+
+        StringBuilder key = new StringBuilder();
+        for (String option : normalized)
+            key.append(option).append('\n');
+        return key.toString();
+    }
+}
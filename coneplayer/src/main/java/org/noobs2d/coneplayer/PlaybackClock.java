@@ -0,0 +1,74 @@
+package org.noobs2d.coneplayer;
+
+import android.os.SystemClock;
+
+/**
+ * Playback position and duration as last reported by libvlc events.
+ * <p>
+ * Writers are serialized, readers never block: the position is read under a sequence
+ * counter and, while playing, extrapolated from the monotonic clock since the last update.
+ */
+final class PlaybackClock {
+
+    static final long TIME_UNKNOWN = -1;
+
+    private volatile int sequence;
+    private volatile long positionMs;
+    private volatile long baseRealtimeMs;
+    private volatile boolean running;
+    private volatile long durationMs = TIME_UNKNOWN;
+
+    long getPositionMs() {
+        while (true) {
+            int seq = sequence;
+            long position = positionMs;
+            long base = baseRealtimeMs;
+            boolean running = this.running;
+            if ((seq & 1) != 0 || seq != sequence)
+                continue;
+
+            if (!running)
+                return position;
+
+            position += SystemClock.elapsedRealtime() - base;
+            long duration = durationMs;
+            if (duration > 0 && position > duration)
+                position = duration;
+            return position;
+        }
+    }
+
+    long getDurationMs() {
+        return durationMs;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    synchronized void setDurationMs(long durationMs) {
+        this.durationMs = durationMs > 0 ? durationMs : TIME_UNKNOWN;
+    }
+
+    synchronized void setPosition(long positionMs) {
+        set(positionMs, running);
+    }
+
+    synchronized void setRunning(boolean running) {
+        if (this.running != running)
+            set(getPositionMs(), running);
+    }
+
+    synchronized void reset() {
+        set(0, false);
+        durationMs = TIME_UNKNOWN;
+    }
+
+    private void set(long positionMs, boolean running) {
+        sequence++;
+        this.positionMs = positionMs;
+        this.baseRealtimeMs = SystemClock.elapsedRealtime();
+        this.running = running;
+        sequence++;
+    }
+}
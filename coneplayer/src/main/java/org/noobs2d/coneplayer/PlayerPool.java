@@ -0,0 +1,167 @@
+package org.noobs2d.coneplayer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.MediaPlayer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * Bounded pool of idle {@link MediaPlayer}s, each with its playback thread, so that creating
+ * a player after warm-up doesn't construct a native player nor start a thread.
+ * Players left idle longer than {@link #IDLE_TIMEOUT_MS} are destroyed, and so are the idle
+ * players of a LibVLC as soon as the last player acquired from it is recycled: the pool never
+ * keeps a VLC core alive on its own, except for players created by {@link #warmUp} that
+ * weren't acquired yet.
+ */
+final class PlayerPool {
+
+    static final int MAX_IDLE_PLAYERS = 2;
+    static final long IDLE_TIMEOUT_MS = 30000;
+
+    private final ArrayList<Entry> idleEntries;
+    // Players acquired and not recycled yet, per LibVLC.
+    private final IdentityHashMap<LibVLC, Integer> activeCounts;
+    private final Handler evictionHandler;
+
+    private final Runnable evictAction = new Runnable() {
+        @Override
+        public void run() {
+            evictIdle();
+        }
+    };
+
+    static final class Entry {
+        final LibVLC libVLC;
+        final MediaPlayer mediaPlayer;
+        final HandlerThread playbackThread;
+        final long idleSinceMs;
+
+        private Entry(LibVLC libVLC, MediaPlayer mediaPlayer, HandlerThread playbackThread) {
+            this.libVLC = libVLC;
+            this.mediaPlayer = mediaPlayer;
+            this.playbackThread = playbackThread;
+            this.idleSinceMs = SystemClock.uptimeMillis();
+        }
+
+        private void destroy() {
+            mediaPlayer.release();
+            playbackThread.quit();
+            libVLC.release();
+        }
+    }
+
+    PlayerPool() {
+        idleEntries = new ArrayList<>();
+        activeCounts = new IdentityHashMap<>();
+        evictionHandler = new Handler(Looper.getMainLooper());
+    }
+
+    static HandlerThread newPlaybackThread() {
+        HandlerThread playbackThread = new HandlerThread("VLCPlayer:Handler",
+                Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        return playbackThread;
+    }
+
+    /**
+     * Returns an idle player created from libVLC, or a new one. The entry holds its own
+     * reference to libVLC, which the caller takes over.
+     */
+    Entry acquire(LibVLC libVLC) {
+        synchronized (this) {
+            Integer activeCount = activeCounts.get(libVLC);
+            activeCounts.put(libVLC, activeCount != null ? activeCount + 1 : 1);
+            for (int i = idleEntries.size() - 1; i >= 0; i--) {
+                if (idleEntries.get(i).libVLC == libVLC)
+                    return idleEntries.remove(i);
+            }
+        }
+        libVLC.retain();
+        return new Entry(libVLC, new MediaPlayer(libVLC), newPlaybackThread());
+    }
+
+    /**
+     * Creates idle players up front so that the next acquisitions are immediate.
+     */
+    void warmUp(LibVLC libVLC, int count) {
+        for (int i = 0; i < count; i++) {
+            libVLC.retain();
+            keepIdle(new Entry(libVLC, new MediaPlayer(libVLC), newPlaybackThread()));
+        }
+    }
+
+    /**
+     * Gives back a stopped player, with no media, listener or view attached, and the reference
+     * to libVLC it was acquired with. The player is destroyed if the pool is full, or if it was
+     * the last one acquired from libVLC, along with the other idle players of libVLC.
+     */
+    void recycle(LibVLC libVLC, MediaPlayer mediaPlayer, HandlerThread playbackThread) {
+        Entry entry = new Entry(libVLC, mediaPlayer, playbackThread);
+        ArrayList<Entry> unused = null;
+        synchronized (this) {
+            Integer activeCount = activeCounts.remove(libVLC);
+            if (activeCount != null && activeCount > 1) {
+                activeCounts.put(libVLC, activeCount - 1);
+            } else {
+                unused = new ArrayList<>();
+                unused.add(entry);
+                Iterator<Entry> iterator = idleEntries.iterator();
+                while (iterator.hasNext()) {
+                    Entry idleEntry = iterator.next();
+                    if (idleEntry.libVLC == libVLC) {
+                        iterator.remove();
+                        unused.add(idleEntry);
+                    }
+                }
+            }
+        }
+        if (unused == null) {
+            keepIdle(entry);
+            return;
+        }
+        for (Entry unusedEntry : unused)
+            unusedEntry.destroy();
+    }
+
+    private void keepIdle(Entry entry) {
+        synchronized (this) {
+            if (idleEntries.size() < MAX_IDLE_PLAYERS) {
+                idleEntries.add(entry);
+                entry = null;
+            }
+        }
+        if (entry != null)
+            entry.destroy();
+        evictionHandler.removeCallbacks(evictAction);
+        evictionHandler.postDelayed(evictAction, IDLE_TIMEOUT_MS);
+    }
+
+    private void evictIdle() {
+        ArrayList<Entry> evicted = new ArrayList<>();
+        long nowMs = SystemClock.uptimeMillis();
+        boolean remaining;
+        synchronized (this) {
+            Iterator<Entry> iterator = idleEntries.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (nowMs - entry.idleSinceMs >= IDLE_TIMEOUT_MS) {
+                    iterator.remove();
+                    evicted.add(entry);
+                }
+            }
+            remaining = !idleEntries.isEmpty();
+        }
+        for (Entry entry : evicted)
+            entry.destroy();
+        if (remaining)
+            evictionHandler.postDelayed(evictAction, IDLE_TIMEOUT_MS);
+    }
+}
@@ -0,0 +1,165 @@
+package org.noobs2d.coneplayer;
+
+import android.os.SystemClock;
+
+/**
+ * Rebuffer accounting of one playback session, fed with the player events.
+ * <p>
+ * A rebuffer is a buffering drop below 100% once playback has started. The buffering
+ * before the first playback and the buffering caused by a seek are not counted as stalls
+ * and are left out of both the stall and the playing time.
+ */
+final class RebufferTracker {
+
+    /**
+     * Source of the monotonic time stalls and playback are measured with.
+     */
+    interface TimeSource {
+        long elapsedRealtimeMs();
+    }
+
+    private static final TimeSource SYSTEM_TIME = new TimeSource() {
+        @Override
+        public long elapsedRealtimeMs() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private final TimeSource timeSource;
+    private boolean playing;
+    private boolean started;
+    private boolean stalled;
+    private boolean seeking;
+    private float buffering;
+    private int rebufferCount;
+    private long stallTimeMs;
+    private long playTimeMs;
+    private long startupMs;
+    private long resetAtMs;
+    private long lastUpdateMs;
+
+    RebufferTracker() {
+        this(SYSTEM_TIME);
+    }
+
+    RebufferTracker(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    synchronized void reset() {
+        playing = false;
+        started = false;
+        stalled = false;
+        seeking = false;
+        buffering = 0;
+        rebufferCount = 0;
+        stallTimeMs = 0;
+        playTimeMs = 0;
+        startupMs = PlaybackClock.TIME_UNKNOWN;
+        resetAtMs = timeSource.elapsedRealtimeMs();
+        lastUpdateMs = resetAtMs;
+    }
+
+    /**
+     * Resets the tracker for a media that was opened and buffered ahead of time, such as a
+     * preloaded playlist item: its playback starts as soon as it plays, and any buffering
+     * drop after that is a rebuffer.
+     */
+    synchronized void resetBuffered() {
+        reset();
+        buffering = 100;
+    }
+
+    synchronized void setPlaying(boolean playing) {
+        advance();
+        this.playing = playing;
+        if (playing && buffering >= 100)
+            onStarted();
+    }
+
+    synchronized void onBuffering(float percent) {
+        advance();
+        buffering = percent;
+        if (percent < 100) {
+            if (started && playing && !stalled) {
+                stalled = true;
+                if (!seeking)
+                    rebufferCount++;
+            }
+            return;
+        }
+
+        stalled = false;
+        seeking = false;
+        if (playing)
+            onStarted();
+    }
+
+    synchronized void onSeek() {
+        advance();
+        seeking = true;
+    }
+
+    /**
+     * Called when playback progresses, which ends the grace period of a seek that didn't
+     * need any buffering.
+     */
+    synchronized void onProgress() {
+        if (!stalled)
+            seeking = false;
+    }
+
+    private void onStarted() {
+        if (started)
+            return;
+        started = true;
+        startupMs = lastUpdateMs - resetAtMs;
+    }
+
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Returns the time from the reset to the start of playback, or
+     * {@link PlaybackClock#TIME_UNKNOWN} while it has not started.
+     */
+    synchronized long getStartupMs() {
+        return startupMs;
+    }
+
+    synchronized long getPlayTimeMs() {
+        advance();
+        return playTimeMs;
+    }
+
+    synchronized int getRebufferCount() {
+        return rebufferCount;
+    }
+
+    synchronized long getStallTimeMs() {
+        advance();
+        return stallTimeMs;
+    }
+
+    /**
+     * Returns the stall time over the stall and playing time, 0 before playback started.
+     */
+    synchronized float getStallRatio() {
+        advance();
+        long totalMs = stallTimeMs + playTimeMs;
+        return totalMs > 0 ? (float) stallTimeMs / totalMs : 0f;
+    }
+
+    private void advance() {
+        long nowMs = timeSource.elapsedRealtimeMs();
+        long elapsedMs = nowMs - lastUpdateMs;
+        if (stalled) {
+            if (playing && !seeking)
+                stallTimeMs += elapsedMs;
+        } else if (started && playing) {
+            playTimeMs += elapsedMs;
+        }
+        lastUpdateMs = nowMs;
+    }
+}
@@ -2,11 +2,10 @@ package org.noobs2d.coneplayer;
 
 import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
-import android.os.Bundle;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
-import android.os.Process;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -17,6 +16,10 @@ import org.videolan.libvlc.IVLCVout;
 import org.videolan.libvlc.LibVLC;
 import org.videolan.libvlc.MediaPlayer;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 public class SimpleConePlayer
@@ -33,74 +36,209 @@ public class SimpleConePlayer
     private static final int MSG_STOP = 5;
     private static final int MSG_RELEASE = 6;
     private static final int MSG_ATTACH_VIEW = 7;
+    private static final int MSG_SET_PLAYLIST = 8;
+    private static final int MSG_ADD_TO_PLAYLIST = 9;
+    private static final int MSG_NEXT = 10;
+    private static final int MSG_PRELOAD = 11;
+    private static final int MSG_ADVANCE = 12;
+
+    private static final long PLAYER_EVENTS = MediaPlayer.Event.mask(
+            MediaPlayer.Event.Opening,
+            MediaPlayer.Event.Buffering,
+            MediaPlayer.Event.Vout,
+            MediaPlayer.Event.ESAdded,
+            MediaPlayer.Event.ESDeleted,
+            MediaPlayer.Event.Playing,
+            MediaPlayer.Event.Paused,
+            MediaPlayer.Event.EndReached,
+            MediaPlayer.Event.Stopped,
+            MediaPlayer.Event.EncounteredError,
+            MediaPlayer.Event.TimeChanged,
+            MediaPlayer.Event.PositionChanged);
+
+    private static final int MAX_RECENT_TIMELINES = 16;
+
+    private static final int TRANSPORT_NONE = -1;
+    private static final long SEEK_NONE = Long.MIN_VALUE;
 
     private final CopyOnWriteArraySet<VideoListener> videoListeners;
     private final CopyOnWriteArraySet<PlayerStateChangeListener> playerStateChangeListeners;
     private final CopyOnWriteArraySet<CompletionListener> completionListeners;
+    private final CopyOnWriteArraySet<StartupTimelineListener> startupTimelineListeners;
     private final HandlerThread internalPlaybackThread;
     private final Handler handler;
+    private final PlaybackClock clock;
+    private final RebufferTracker rebufferTracker;
+    private final PlayerPool playerPool;
     private ComponentListener componentListener;
     private LibVLC libVLC;
-    private MediaPlayer mediaPlayer;
-    private IVLCVout vlcVout;
+    private volatile MediaPlayer mediaPlayer;
+    private volatile IVLCVout vlcVout;
     private View videoView;
+    // state is what listeners see: playbackState, overridden by STATE_BUFFERING while
+    // buffering before or during playback.
     private int state = STATE_IDLE;
-    private boolean onRenderFirstFrame = false;
-
+    private int playbackState = STATE_IDLE;
+    private volatile float buffering = 0;
+
+    // The caching each media was opened with, reported to cachingPolicy when its session
+    // ends. The standby fields are only touched from the playback thread; the session ones,
+    // like buffering and the first frame state, only from the main thread, where events are
+    // delivered.
+    private volatile CachingPolicy cachingPolicy;
+    private volatile Media activeMedia;
+    private volatile int activeCachingMs;
+    private Media standbyMedia;
+    private int standbyCachingMs;
+    private volatile Media sessionMedia;
+    private volatile int sessionCachingMs;
+    private volatile boolean onRenderFirstFrame = false;
+
+    // The first frame is only reported once the current player has a video output and its
+    // surfaces are ready. surfacesReady is written from the main and playback threads,
+    // voutReady, hasVideoTrack and the first frame itself only on the main thread.
+    private volatile boolean voutReady = false;
+    private boolean hasVideoTrack = false;
+    private volatile boolean surfacesReady = false;
+    private boolean released = false;
+
+    // Startup timeline of the media being opened, replaced on every prepare and playlist
+    // transition. The creation time is only reported on the first one.
+    private final ArrayDeque<StartupTimeline> recentTimelines = new ArrayDeque<>();
+    private volatile StartupTimeline currentTimeline;
+    private long createdAtNs;
+
+    // The playlist is only touched from the playback thread. While an item plays, the next
+    // one is opened on standbyPlayer, paused on its first frame, so that EndReached only has
+    // to swap the players instead of opening and buffering the next input.
+    private final ArrayList<Media> playlist = new ArrayList<>();
+    private volatile int playlistIndex = -1;
+    private volatile int playlistSize = 0;
+    private MediaPlayer standbyPlayer;
+    private int standbyIndex = -1;
+    private volatile Surface attachedSurface;
+    private int attachedWidth;
+    private int attachedHeight;
+
+    // Seek and play/pause requests are coalesced: while one is still waiting on the
+    // playback thread, newer requests only update its target instead of queueing
+    // another message. Guarded by commandLock.
+    private final Object commandLock = new Object();
+    private long pendingSeekPositionMs = SEEK_NONE;
+    private int pendingTransport = TRANSPORT_NONE;
+    private int commandQueueDepth;
+    private long collapsedCommandCount;
+
+    /**
+     * Creates a player owning one reference of libVLC, released with the player.
+     * Call {@link LibVLC#retain()} before to share the same instance between several players.
+     */
     public SimpleConePlayer(LibVLC libVLC) {
+        this(libVLC, new MediaPlayer(libVLC), PlayerPool.newPlaybackThread(), null,
+                System.nanoTime());
+    }
+
+    /**
+     * Creates a player on top of a pooled MediaPlayer and playback thread. On release they are
+     * given back to playerPool, together with the reference to libVLC.
+     *
+     * @param createdAtNs {@link System#nanoTime()} when the player was requested
+     */
+    SimpleConePlayer(LibVLC libVLC,
+                     MediaPlayer mediaPlayer,
+                     HandlerThread playbackThread,
+                     PlayerPool playerPool,
+                     long createdAtNs) {
         this.libVLC = libVLC;
-        mediaPlayer = new MediaPlayer(libVLC);
+        this.mediaPlayer = mediaPlayer;
+        this.playerPool = playerPool;
+        this.createdAtNs = createdAtNs;
         vlcVout = mediaPlayer.getVLCVout();
 
         videoListeners = new CopyOnWriteArraySet<>();
         playerStateChangeListeners = new CopyOnWriteArraySet<>();
         completionListeners = new CopyOnWriteArraySet<>();
+        startupTimelineListeners = new CopyOnWriteArraySet<>();
         componentListener = new ComponentListener();
+        clock = new PlaybackClock();
+        rebufferTracker = new RebufferTracker();
 
-        internalPlaybackThread = new HandlerThread("VLCPlayer:Handler",
-                Process.THREAD_PRIORITY_AUDIO);
-        internalPlaybackThread.start();
+        internalPlaybackThread = playbackThread;
         handler = new Handler(internalPlaybackThread.getLooper(), this);
-        mediaPlayer.setEventListener(this);
+        mediaPlayer.setEventListener(this, PLAYER_EVENTS);
         vlcVout.addCallback(this);
     }
 
     @Override
     public boolean handleMessage(Message msg) {
+        // A recycled playback thread can still hold messages for this player.
+        if (released)
+            return true;
+
         try {
             switch (msg.what) {
                 case MSG_PREPARE: {
+                    onCommandDequeued();
                     Media media = (Media) msg.obj;
                     prepareInternal(media);
                     return true;
                 }
-                case MSG_PLAY: {
-                    playInternal();
-                    return true;
-                }
+                case MSG_PLAY:
                 case MSG_PAUSE: {
-                    pauseInternal();
+                    int transport = takePendingTransport();
+                    if (transport == MSG_PLAY)
+                        playInternal();
+                    else if (transport == MSG_PAUSE)
+                        pauseInternal();
                     return true;
                 }
                 case MSG_SEEK: {
-                    seekToInternal((Long) msg.obj);
+                    long positionMs = takePendingSeek();
+                    if (positionMs != SEEK_NONE)
+                        seekToInternal(positionMs);
                     return true;
                 }
                 case MSG_REPEAT: {
+                    onCommandDequeued();
                     repeatInternal();
                     return true;
                 }
                 case MSG_STOP: {
+                    onCommandDequeued();
                     stopInternal();
                     return true;
                 }
                 case MSG_RELEASE: {
+                    onCommandDequeued();
                     releaseInternal();
                     return true;
                 }
                 case MSG_ATTACH_VIEW: {
-                    Bundle bundle = (Bundle) msg.obj;
-                    attachViewInternal(bundle);
+                    attachViewInternal((Surface) msg.obj, msg.arg1, msg.arg2);
+                    return true;
+                }
+                case MSG_SET_PLAYLIST: {
+                    onCommandDequeued();
+                    @SuppressWarnings("unchecked")
+                    List<Media> medias = (List<Media>) msg.obj;
+                    setPlaylistInternal(medias);
+                    return true;
+                }
+                case MSG_ADD_TO_PLAYLIST: {
+                    addToPlaylistInternal((Media) msg.obj);
+                    return true;
+                }
+                case MSG_NEXT: {
+                    onCommandDequeued();
+                    nextInternal();
+                    return true;
+                }
+                case MSG_PRELOAD: {
+                    preloadInternal();
+                    return true;
+                }
+                case MSG_ADVANCE: {
+                    nextInternal();
                     return true;
                 }
                 default:
@@ -113,37 +251,217 @@ public class SimpleConePlayer
 
     @Override
     public void prepare(Media media) {
-        handler.obtainMessage(MSG_PREPARE, media).sendToTarget();
+        startTimeline();
+        sendBarrierCommand(handler.obtainMessage(MSG_PREPARE, media));
+    }
+
+    @Override
+    public void prepare(List<Media> playlist) {
+        startTimeline();
+        sendBarrierCommand(handler.obtainMessage(MSG_SET_PLAYLIST, new ArrayList<>(playlist)));
+    }
+
+    @Override
+    public void addToPlaylist(Media media) {
+        handler.obtainMessage(MSG_ADD_TO_PLAYLIST, media).sendToTarget();
+    }
+
+    @Override
+    public void next() {
+        sendBarrierCommand(handler.obtainMessage(MSG_NEXT));
+    }
+
+    @Override
+    public int getPlaylistIndex() {
+        return playlistIndex;
     }
 
     @Override
     public void play() {
-        handler.obtainMessage(MSG_PLAY).sendToTarget();
+        sendTransportCommand(MSG_PLAY);
     }
 
     @Override
     public void pause() {
-        handler.obtainMessage(MSG_PAUSE).sendToTarget();
+        sendTransportCommand(MSG_PAUSE);
     }
 
     @Override
     public void repeat() {
-        handler.obtainMessage(MSG_REPEAT).sendToTarget();
+        sendBarrierCommand(handler.obtainMessage(MSG_REPEAT));
     }
 
     @Override
     public void stop() {
-        handler.obtainMessage(MSG_STOP).sendToTarget();
+        sendBarrierCommand(handler.obtainMessage(MSG_STOP));
     }
 
     @Override
     public void release() {
-        handler.obtainMessage(MSG_RELEASE).sendToTarget();
+        sendBarrierCommand(handler.obtainMessage(MSG_RELEASE));
     }
 
     @Override
     public void seekTo(long positionMs) {
-        handler.obtainMessage(MSG_SEEK, positionMs).sendToTarget();
+        synchronized (commandLock) {
+            if (pendingSeekPositionMs != SEEK_NONE) {
+                pendingSeekPositionMs = positionMs;
+                collapsedCommandCount++;
+                clock.setPosition(positionMs);
+                rebufferTracker.onSeek();
+                return;
+            }
+            pendingSeekPositionMs = positionMs;
+            commandQueueDepth++;
+        }
+        clock.setPosition(positionMs);
+        rebufferTracker.onSeek();
+        handler.obtainMessage(MSG_SEEK).sendToTarget();
+    }
+
+    /**
+     * Returns the number of player commands waiting to be executed on the playback thread.
+     */
+    public int getCommandQueueDepth() {
+        synchronized (commandLock) {
+            return commandQueueDepth;
+        }
+    }
+
+    /**
+     * Returns the number of commands that never reached the playback thread because a newer
+     * command replaced them, or because a prepare, repeat, stop or release cancelled them.
+     */
+    public long getCollapsedCommandCount() {
+        synchronized (commandLock) {
+            return collapsedCommandCount;
+        }
+    }
+
+    private void sendTransportCommand(int what) {
+        synchronized (commandLock) {
+            if (pendingTransport != TRANSPORT_NONE) {
+                pendingTransport = what;
+                collapsedCommandCount++;
+                return;
+            }
+            pendingTransport = what;
+            commandQueueDepth++;
+        }
+        handler.obtainMessage(what).sendToTarget();
+    }
+
+    /**
+     * Prepare, repeat, stop and release reset the player, so any seek or play/pause still
+     * waiting in front of them would be wasted work and is dropped. So is an automatic
+     * advance to the next item, which they replace.
+     */
+    private void sendBarrierCommand(Message msg) {
+        synchronized (commandLock) {
+            if (pendingSeekPositionMs != SEEK_NONE) {
+                pendingSeekPositionMs = SEEK_NONE;
+                commandQueueDepth--;
+                collapsedCommandCount++;
+            }
+            if (pendingTransport != TRANSPORT_NONE) {
+                pendingTransport = TRANSPORT_NONE;
+                commandQueueDepth--;
+                collapsedCommandCount++;
+            }
+            handler.removeMessages(MSG_SEEK);
+            handler.removeMessages(MSG_PLAY);
+            handler.removeMessages(MSG_PAUSE);
+            handler.removeMessages(MSG_ADVANCE);
+            commandQueueDepth++;
+        }
+        msg.sendToTarget();
+    }
+
+    private long takePendingSeek() {
+        synchronized (commandLock) {
+            long positionMs = pendingSeekPositionMs;
+            if (positionMs != SEEK_NONE) {
+                pendingSeekPositionMs = SEEK_NONE;
+                commandQueueDepth--;
+            }
+            return positionMs;
+        }
+    }
+
+    private int takePendingTransport() {
+        synchronized (commandLock) {
+            int transport = pendingTransport;
+            if (transport != TRANSPORT_NONE) {
+                pendingTransport = TRANSPORT_NONE;
+                commandQueueDepth--;
+            }
+            return transport;
+        }
+    }
+
+    private void onCommandDequeued() {
+        synchronized (commandLock) {
+            commandQueueDepth--;
+        }
+    }
+
+    @Override
+    public void addStartupTimelineListener(StartupTimelineListener listener) {
+        startupTimelineListeners.add(listener);
+    }
+
+    @Override
+    public void removeStartupTimelineListener(StartupTimelineListener listener) {
+        startupTimelineListeners.remove(listener);
+    }
+
+    @Override
+    public List<StartupTimeline> getRecentStartupTimelines() {
+        synchronized (recentTimelines) {
+            return new ArrayList<>(recentTimelines);
+        }
+    }
+
+    /**
+     * Returns the handler of the playback thread, for tests that run code in between the
+     * player commands.
+     */
+    Handler getPlaybackHandler() {
+        return handler;
+    }
+
+    private void startTimeline() {
+        StartupTimeline timeline = new StartupTimeline();
+        synchronized (recentTimelines) {
+            if (createdAtNs != 0) {
+                timeline.mark(StartupTimeline.PHASE_CREATE, createdAtNs);
+                createdAtNs = 0;
+            }
+        }
+        timeline.mark(StartupTimeline.PHASE_PREPARE);
+        currentTimeline = timeline;
+    }
+
+    private void markTimeline(int phase) {
+        StartupTimeline timeline = currentTimeline;
+        if (timeline != null)
+            timeline.mark(phase);
+    }
+
+    private void finishTimeline(long firstFrameNs) {
+        StartupTimeline timeline = currentTimeline;
+        if (timeline == null)
+            return;
+
+        currentTimeline = null;
+        timeline.mark(StartupTimeline.PHASE_FIRST_FRAME, firstFrameNs);
+        synchronized (recentTimelines) {
+            if (recentTimelines.size() == MAX_RECENT_TIMELINES)
+                recentTimelines.removeLast();
+            recentTimelines.addFirst(timeline);
+        }
+        for (StartupTimelineListener listener : startupTimelineListeners)
+            listener.onStartupTimeline(timeline);
     }
 
     @Override
@@ -244,6 +562,7 @@ public class SimpleConePlayer
         if (textureView != null && videoView == textureView) {
             textureView.setSurfaceTextureListener(null);
             videoView = null;
+            attachedSurface = null;
             vlcVout.detachViews();
         }
     }
@@ -253,6 +572,7 @@ public class SimpleConePlayer
         if (surfaceView != null && videoView == surfaceView) {
             surfaceView.getHolder().removeCallback(componentListener);
             videoView = null;
+            attachedSurface = null;
             vlcVout.detachViews();
         }
     }
@@ -262,14 +582,49 @@ public class SimpleConePlayer
         return state;
     }
 
+    /**
+     * Returns the duration reported by libvlc, or -1 while it is not known yet.
+     */
     @Override
     public long getDuration() {
-        return mediaPlayer.getMedia().getDuration();
+        return clock.getDurationMs();
     }
 
+    /**
+     * Returns the playback position in milliseconds. Served from the last reported time and
+     * extrapolated while playing, so it is cheap enough to call on every frame.
+     */
     @Override
     public long getCurrentPosition() {
-        return mediaPlayer.getTime();
+        return clock.getPositionMs();
+    }
+
+    /**
+     * Sets the policy choosing the caching of every media this player opens, and learning
+     * from the sessions it plays. Without a policy, libvlc defaults are used.
+     */
+    public void setCachingPolicy(CachingPolicy cachingPolicy) {
+        this.cachingPolicy = cachingPolicy;
+    }
+
+    @Override
+    public float getBuffering() {
+        return buffering;
+    }
+
+    @Override
+    public int getRebufferCount() {
+        return rebufferTracker.getRebufferCount();
+    }
+
+    @Override
+    public long getRebufferDurationMs() {
+        return rebufferTracker.getStallTimeMs();
+    }
+
+    @Override
+    public float getStallRatio() {
+        return rebufferTracker.getStallRatio();
     }
 
     @Override
@@ -280,18 +635,22 @@ public class SimpleConePlayer
                             int visibleHeight,
                             int sarNum,
                             int sarDen) {
+        if (vlcVout != this.vlcVout)
+            return;
         for (VideoListener videoListener : videoListeners)
             videoListener.onVideoSizeChanged(width, height);
     }
 
     @Override
     public void onSurfacesCreated(IVLCVout vlcVout) {
-
+        if (vlcVout == this.vlcVout)
+            surfacesReady = true;
     }
 
     @Override
     public void onSurfacesDestroyed(IVLCVout vlcVout) {
-
+        if (vlcVout == this.vlcVout)
+            surfacesReady = false;
     }
 
     @Override
@@ -301,51 +660,176 @@ public class SimpleConePlayer
 
     @Override
     public void onEvent(MediaPlayer.Event event) {
+        int previousState = state;
         switch (event.type) {
             case MediaPlayer.Event.Opening:
-                state = STATE_IDLE;
+                endSession();
+                sessionMedia = activeMedia;
+                sessionCachingMs = activeCachingMs;
+                playbackState = STATE_IDLE;
+                buffering = 0;
+                clock.reset();
+                rebufferTracker.reset();
+                markTimeline(StartupTimeline.PHASE_OPENING);
                 onIdle();
                 break;
 
+            case MediaPlayer.Event.Buffering:
+                buffering = event.getBuffering();
+                if (buffering > 0)
+                    markTimeline(StartupTimeline.PHASE_FIRST_BUFFERING);
+                rebufferTracker.onBuffering(buffering);
+                break;
+
+            case MediaPlayer.Event.Vout:
+                voutReady = event.getVoutCount() > 0;
+                if (voutReady) {
+                    hasVideoTrack = true;
+                    markTimeline(StartupTimeline.PHASE_VOUT);
+                }
+                break;
+
+            case MediaPlayer.Event.ESAdded:
+                if (event.getEsChangedType() == org.videolan.libvlc.Media.Track.Type.Video)
+                    hasVideoTrack = true;
+                break;
+
+            case MediaPlayer.Event.ESDeleted:
+                if (event.getEsChangedType() == org.videolan.libvlc.Media.Track.Type.Video)
+                    hasVideoTrack = mediaPlayer.getVideoTracksCount() > 0;
+                break;
+
             case MediaPlayer.Event.Playing:
-                state = STATE_PLAYING;
+                playbackState = STATE_PLAYING;
+                markTimeline(StartupTimeline.PHASE_PLAYING);
+                updateDuration();
+                rebufferTracker.setPlaying(true);
+                handler.sendEmptyMessage(MSG_PRELOAD);
                 break;
 
             case MediaPlayer.Event.Paused:
-                state = STATE_PAUSE;
+                playbackState = STATE_PAUSE;
+                rebufferTracker.setPlaying(false);
                 break;
 
             case MediaPlayer.Event.EndReached:
-                state = STATE_ENDED;
+                rebufferTracker.setPlaying(false);
+                endSession();
+                if (playlistIndex + 1 < playlistSize) {
+                    // Not a user command: seeks and play/pause already requested stay queued.
+                    handler.sendEmptyMessage(MSG_ADVANCE);
+                    break;
+                }
+                playbackState = STATE_ENDED;
                 onEndReached();
                 break;
 
             case MediaPlayer.Event.Stopped:
-                state = STATE_STOP;
+                playbackState = STATE_STOP;
+                rebufferTracker.setPlaying(false);
+                endSession();
+                break;
+
+            case MediaPlayer.Event.EncounteredError:
+                playbackState = STATE_ERROR;
+                rebufferTracker.setPlaying(false);
+                endSession();
+                break;
+
+            case MediaPlayer.Event.TimeChanged:
+                updateDuration();
+                clock.setPosition(event.getTimeChanged());
+                rebufferTracker.onProgress();
                 break;
 
             case MediaPlayer.Event.PositionChanged:
-                onRenderedFirstFrame();
+                onPositionChanged();
                 break;
         }
 
+        boolean waitingForData = buffering < 100
+                && (playbackState == STATE_IDLE || playbackState == STATE_PLAYING);
+        state = waitingForData ? STATE_BUFFERING : playbackState;
+        clock.setRunning(state == STATE_PLAYING);
+
+        if (state == previousState)
+            return;
+
         for (PlayerStateChangeListener playerStateChangeListener : playerStateChangeListeners)
             playerStateChangeListener.onPlayerStateChanged(state);
 
     }
 
+    /**
+     * Reports the session of the current media to the caching policy, if it started playing.
+     */
+    private void endSession() {
+        Media media = sessionMedia;
+        sessionMedia = null;
+        CachingPolicy policy = cachingPolicy;
+        if (media == null || policy == null || !rebufferTracker.isStarted())
+            return;
+
+        policy.onSession(new CachingSession(hostOf(media),
+                sessionCachingMs,
+                rebufferTracker.getStartupMs(),
+                rebufferTracker.getPlayTimeMs(),
+                rebufferTracker.getRebufferCount(),
+                rebufferTracker.getStallTimeMs()));
+    }
+
+    /**
+     * Returns the host media is read from, or null when it has none, like a local file.
+     */
+    private static String hostOf(Media media) {
+        Uri path = media.getPath();
+        return path != null ? path.getHost() : null;
+    }
+
+    private void updateDuration() {
+        if (clock.getDurationMs() == PlaybackClock.TIME_UNKNOWN)
+            clock.setDurationMs(mediaPlayer.getLength());
+    }
+
     private void onIdle() {
         onRenderFirstFrame = false;
+        voutReady = false;
+        hasVideoTrack = false;
     }
 
-    private void onRenderedFirstFrame() {
+    /**
+     * Without a TextureView there is no per-frame callback: the first frame is the first
+     * position update once the video output is running on a ready surface. Playback that
+     * can't show any picture (no surface, no video track) reports it on the first update.
+     * Whether there is a video track is followed from the ES events, not asked to the
+     * player on every update.
+     */
+    private void onPositionChanged() {
         if (onRenderFirstFrame)
             return;
 
+        if (voutReady) {
+            if (surfacesReady && !(videoView instanceof TextureView))
+                onRenderedFirstFrame(System.nanoTime());
+        } else if (attachedSurface == null || !hasVideoTrack) {
+            onRenderedFirstFrame(System.nanoTime());
+        }
+    }
+
+    /**
+     * Called on the main thread for every frame drawn on the TextureView.
+     */
+    private void onTextureUpdated() {
+        if (!onRenderFirstFrame && voutReady && surfacesReady)
+            onRenderedFirstFrame(System.nanoTime());
+    }
+
+    private void onRenderedFirstFrame(long timestampNs) {
         for (VideoListener videoListener : videoListeners)
             videoListener.onRenderedFirstFrame();
 
         onRenderFirstFrame = true;
+        finishTimeline(timestampNs);
     }
 
     private void onEndReached() {
@@ -354,9 +838,136 @@ public class SimpleConePlayer
     }
 
     private void prepareInternal(Media media) {
+        setPlaylistInternal(Collections.singletonList(media));
+    }
+
+    private void setMediaInternal(MediaPlayer player, Media media) {
         org.videolan.libvlc.Media libVlcMedia = new org.videolan.libvlc.Media(libVLC, media.getPath());
-        mediaPlayer.setMedia(libVlcMedia);
+        int cachingMs = 0;
+        CachingPolicy policy = cachingPolicy;
+        if (policy != null) {
+            String host = hostOf(media);
+            cachingMs = policy.getCachingMs(host);
+            libVlcMedia.addOption(CachingPolicy.getCachingOption(host, cachingMs));
+        }
+        // The standby player opens and buffers its input without consuming it.
+        if (player != mediaPlayer)
+            libVlcMedia.addOption(":start-paused");
+        player.setMedia(libVlcMedia);
         libVlcMedia.release();
+        if (player == mediaPlayer) {
+            activeMedia = media;
+            activeCachingMs = cachingMs;
+            markTimeline(StartupTimeline.PHASE_SET_MEDIA);
+        } else {
+            standbyMedia = media;
+            standbyCachingMs = cachingMs;
+        }
+    }
+
+    private void setPlaylistInternal(List<Media> medias) {
+        resetStandbyInternal();
+        playlist.clear();
+        playlist.addAll(medias);
+        playlistSize = playlist.size();
+        playlistIndex = playlist.isEmpty() ? -1 : 0;
+        if (playlistIndex != -1)
+            setMediaInternal(mediaPlayer, playlist.get(playlistIndex));
+    }
+
+    private void addToPlaylistInternal(Media media) {
+        playlist.add(media);
+        playlistSize = playlist.size();
+        if (playlistIndex == -1) {
+            playlistIndex = 0;
+            setMediaInternal(mediaPlayer, media);
+        } else if (mediaPlayer.isPlaying()) {
+            preloadInternal();
+        }
+    }
+
+    private void preloadInternal() {
+        int nextIndex = playlistIndex + 1;
+        if (nextIndex >= playlist.size() || standbyIndex == nextIndex)
+            return;
+
+        if (standbyPlayer == null) {
+            standbyPlayer = new MediaPlayer(libVLC);
+            standbyPlayer.getVLCVout().addCallback(this);
+        }
+        standbyPlayer.setEventListener(null);
+        setMediaInternal(standbyPlayer, playlist.get(nextIndex));
+        standbyPlayer.play();
+        standbyIndex = nextIndex;
+    }
+
+    private void resetStandbyInternal() {
+        if (standbyPlayer != null && standbyIndex != -1)
+            standbyPlayer.stop();
+        standbyIndex = -1;
+    }
+
+    private void nextInternal() {
+        int nextIndex = playlistIndex + 1;
+        if (nextIndex >= playlist.size())
+            return;
+
+        clock.reset();
+        startTimeline();
+        if (standbyIndex != nextIndex) {
+            resetStandbyInternal();
+            playlistIndex = nextIndex;
+            setMediaInternal(mediaPlayer, playlist.get(nextIndex));
+            mediaPlayer.play();
+            return;
+        }
+
+        MediaPlayer previousPlayer = mediaPlayer;
+        previousPlayer.setEventListener(null);
+
+        mediaPlayer = standbyPlayer;
+        vlcVout = mediaPlayer.getVLCVout();
+        surfacesReady = false;
+        standbyPlayer = previousPlayer;
+        standbyIndex = -1;
+        playlistIndex = nextIndex;
+        activeMedia = standbyMedia;
+        activeCachingMs = standbyCachingMs;
+
+        // The preloaded item plays first: stopping the previous player blocks until its
+        // input and outputs are closed, which must not delay the transition.
+        // Its tracks were added while on standby, before the new listener could see them.
+        mediaPlayer.setEventListener(new SwappedPlayerListener(activeMedia, activeCachingMs,
+                mediaPlayer.getVideoTracksCount() > 0), PLAYER_EVENTS);
+        Surface surface = attachedSurface;
+        if (surface != null) {
+            // The standby player had no surface to open a video output on. Without a video
+            // track, MediaPlayer selects it again once the surface is ready, and the output
+            // is created on it.
+            mediaPlayer.setVideoTrack(-1);
+        }
+        mediaPlayer.play();
+        previousPlayer.getVLCVout().detachViews();
+        if (surface != null)
+            attachViewInternal(surface, attachedWidth, attachedHeight);
+        previousPlayer.stop();
+    }
+
+    /**
+     * Starts the session of an item swapped in from standby, on the main thread like every
+     * other session change.
+     */
+    private void onStandbySwapped(Media media, int cachingMs, boolean hasVideo) {
+        endSession();
+        // The preloaded item was opened and buffered while on standby, its session starts now.
+        // It won't report any buffering before playing, so it is tracked as buffered already.
+        rebufferTracker.resetBuffered();
+        buffering = 100;
+        sessionMedia = media;
+        sessionCachingMs = cachingMs;
+        clock.reset();
+        onIdle();
+        hasVideoTrack = hasVideo;
     }
 
     private void playInternal() {
@@ -373,37 +984,92 @@ public class SimpleConePlayer
 
     private void repeatInternal() {
         org.videolan.libvlc.Media libVlcMedia = mediaPlayer.getMedia();
+        // A preloaded media was opened paused.
+        libVlcMedia.addOption(":no-start-paused");
         mediaPlayer.setMedia(libVlcMedia);
         mediaPlayer.play();
         libVlcMedia.release();
     }
 
     private void releaseInternal() {
-        mediaPlayer.release();
-        libVLC.release();
+        playlist.clear();
+        playlistSize = 0;
+        playlistIndex = -1;
+        if (standbyPlayer != null) {
+            standbyPlayer.release();
+            standbyPlayer = null;
+        }
+        released = true;
+
+        if (playerPool == null) {
+            mediaPlayer.release();
+            libVLC.release();
+            internalPlaybackThread.quit();
+            return;
+        }
+
+        mediaPlayer.setEventListener(null);
+        vlcVout.removeCallback(this);
+        vlcVout.detachViews();
+        mediaPlayer.stop();
+        mediaPlayer.setMedia(null);
+        mediaPlayer.setVolume(100);
+        playerPool.recycle(libVLC, mediaPlayer, internalPlaybackThread);
     }
 
-    private void attachViewInternal(Bundle bundle) {
-        int width = bundle.getInt("width");
-        int height = bundle.getInt("height");
-        Surface surface = bundle.getParcelable("surface");
+    private void attachViewInternal(Surface surface, int width, int height) {
+        attachedSurface = surface;
+        attachedWidth = width;
+        attachedHeight = height;
         vlcVout.setWindowSize(width, height);
         vlcVout.setVideoSurface(surface, null);
         vlcVout.attachViews();
     }
 
+    /**
+     * Renders into a surface that no view owns, for tests.
+     */
+    void setVideoSurface(Surface surface, int width, int height) {
+        setSurfaceInternal(surface, width, height);
+    }
+
     private void setSurfaceInternal(Surface surface, int width, int height) {
-        Bundle bundle = new Bundle();
-        bundle.putParcelable("surface", surface);
-        bundle.putInt("width", width);
-        bundle.putInt("height", height);
-        handler.obtainMessage(MSG_ATTACH_VIEW, bundle).sendToTarget();
+        handler.obtainMessage(MSG_ATTACH_VIEW, width, height, surface).sendToTarget();
     }
 
     private void stopInternal() {
         mediaPlayer.stop();
     }
 
+    /**
+     * Listens to a player swapped in from standby. Its session is started with its first
+     * event: events of the previous player can't be delivered after it, so they can't
+     * overwrite the state of the new session.
+     */
+    private final class SwappedPlayerListener implements MediaPlayer.EventListener {
+
+        private final Media media;
+        private final int cachingMs;
+        private final boolean hasVideoTrack;
+        /* only used on the main thread */
+        private boolean started;
+
+        SwappedPlayerListener(Media media, int cachingMs, boolean hasVideoTrack) {
+            this.media = media;
+            this.cachingMs = cachingMs;
+            this.hasVideoTrack = hasVideoTrack;
+        }
+
+        @Override
+        public void onEvent(MediaPlayer.Event event) {
+            if (!started) {
+                started = true;
+                onStandbySwapped(media, cachingMs, hasVideoTrack);
+            }
+            SimpleConePlayer.this.onEvent(event);
+        }
+    }
+
     private final class ComponentListener
             implements TextureView.SurfaceTextureListener,
             SurfaceHolder.Callback {
@@ -425,7 +1091,7 @@ public class SimpleConePlayer
 
         @Override
         public void onSurfaceTextureUpdated(SurfaceTexture surface) {
-
+            onTextureUpdated();
         }
 
         @Override
@@ -0,0 +1,85 @@
+package org.noobs2d.coneplayer;
+
+/**
+ * Timestamps, taken with {@link System#nanoTime()}, of the steps between asking a player
+ * to prepare a media and its first rendered frame. One timeline is recorded per prepared
+ * media; steps that were not observed are left at 0.
+ */
+public final class StartupTimeline {
+
+    /**
+     * Player creation by {@link ConePlayerFactory}, only set on the first timeline of a player.
+     */
+    public static final int PHASE_CREATE = 0;
+
+    public static final int PHASE_PREPARE = 1;
+
+    public static final int PHASE_SET_MEDIA = 2;
+
+    public static final int PHASE_OPENING = 3;
+
+    public static final int PHASE_FIRST_BUFFERING = 4;
+
+    public static final int PHASE_VOUT = 5;
+
+    public static final int PHASE_PLAYING = 6;
+
+    public static final int PHASE_FIRST_FRAME = 7;
+
+    public static final int PHASE_COUNT = 8;
+
+    private final long[] timestampsNs = new long[PHASE_COUNT];
+
+    StartupTimeline() {
+    }
+
+    synchronized void mark(int phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    synchronized void mark(int phase, long timestampNs) {
+        if (timestampsNs[phase] == 0)
+            timestampsNs[phase] = timestampNs;
+    }
+
+    /**
+     * Returns when a phase happened, or 0 if it was not observed.
+     */
+    public synchronized long getTimestampNs(int phase) {
+        return timestampsNs[phase];
+    }
+
+    /**
+     * Returns the time from the start of the timeline to a phase, or -1 if the phase was not
+     * observed. The timeline starts at player creation when known, at prepare otherwise.
+     */
+    public synchronized long getElapsedNs(int phase) {
+        long startNs = timestampsNs[PHASE_CREATE] != 0
+                ? timestampsNs[PHASE_CREATE]
+                : timestampsNs[PHASE_PREPARE];
+        if (startNs == 0 || timestampsNs[phase] == 0)
+            return -1;
+        return timestampsNs[phase] - startNs;
+    }
+
+    /**
+     * Returns the time between two phases, or -1 if one of them was not observed.
+     */
+    public synchronized long getDurationNs(int fromPhase, int toPhase) {
+        if (timestampsNs[fromPhase] == 0 || timestampsNs[toPhase] == 0)
+            return -1;
+        return timestampsNs[toPhase] - timestampsNs[fromPhase];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("StartupTimeline{");
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            if (phase > 0)
+                sb.append(", ");
+            long elapsedNs = getElapsedNs(phase);
+            sb.append(phase).append('=').append(elapsedNs < 0 ? "-" : (elapsedNs / 1000000) + "ms");
+        }
+        return sb.append('}').toString();
+    }
+}
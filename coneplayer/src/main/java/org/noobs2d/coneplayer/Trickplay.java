@@ -0,0 +1,144 @@
+package org.noobs2d.coneplayer;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * Evenly spaced preview frames of a media, tiled row by row in a single sprite bitmap, so
+ * that showing the frame of any scrub position is a lookup in {@link #getFrameRect}.
+ * <p>
+ * Frame {@code i} is taken at the middle of the {@code i}-th of {@link #getFrameCount()}
+ * equal slices of the media. A trickplay is returned by {@link TrickplayGenerator} while it
+ * is still being generated: frames become available one by one, in order.
+ */
+public final class Trickplay {
+
+    private final String uri;
+    private final long durationMs;
+    private final int frameCount;
+    private final int columns;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Bitmap sprite;
+    private final boolean[] extracted;
+    private final long[] extractedTimesMs;
+    private volatile int extractedCount;
+    private volatile boolean complete;
+
+    Trickplay(String uri, long durationMs, int frameCount, int tileWidth, int tileHeight) {
+        this.uri = uri;
+        this.durationMs = durationMs;
+        this.frameCount = frameCount;
+        this.columns = (int) Math.ceil(Math.sqrt(frameCount));
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        int rows = (frameCount + columns - 1) / columns;
+        this.sprite = Bitmap.createBitmap(columns * tileWidth, rows * tileHeight,
+                Bitmap.Config.ARGB_8888);
+        this.extracted = new boolean[frameCount];
+        this.extractedTimesMs = new long[frameCount];
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Returns the bitmap holding every frame. It is shared and must not be modified. Frames
+     * are copied into it on the main thread only, so it can be drawn there at any time.
+     */
+    public Bitmap getSprite() {
+        return sprite;
+    }
+
+    /**
+     * Returns the number of frames available so far.
+     */
+    public int getExtractedCount() {
+        return extractedCount;
+    }
+
+    /**
+     * Returns whether generation is over. Frames that could not be extracted are left empty.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the index of the frame previewing a position.
+     */
+    public int getFrameIndex(long positionMs) {
+        if (positionMs <= 0)
+            return 0;
+        if (positionMs >= durationMs)
+            return frameCount - 1;
+        return (int) (positionMs * frameCount / durationMs);
+    }
+
+    /**
+     * Returns the position a frame was taken at.
+     */
+    public long getFrameTimeMs(int index) {
+        return (2 * index + 1) * durationMs / (2 * frameCount);
+    }
+
+    /**
+     * Sets the area of the sprite holding the frame previewing a position.
+     *
+     * @return false if that frame is not available, in which case the rect is left unchanged
+     */
+    public boolean getFrameRect(long positionMs, Rect rect) {
+        int index = getFrameIndex(positionMs);
+        synchronized (extracted) {
+            if (!extracted[index])
+                return false;
+        }
+        int left = index % columns * tileWidth;
+        int top = index / columns * tileHeight;
+        rect.set(left, top, left + tileWidth, top + tileHeight);
+        return true;
+    }
+
+    /**
+     * Returns the position an extracted frame was actually grabbed at, as reported by the
+     * player, or {@link PlaybackClock#TIME_UNKNOWN} if that frame is not available.
+     */
+    long getExtractedTimeMs(int index) {
+        synchronized (extracted) {
+            return extracted[index] ? extractedTimesMs[index] : PlaybackClock.TIME_UNKNOWN;
+        }
+    }
+
+    void setExtracted(int index, long timeMs) {
+        synchronized (extracted) {
+            extracted[index] = true;
+            extractedTimesMs[index] = timeMs;
+        }
+        extractedCount++;
+    }
+
+    void setComplete() {
+        complete = true;
+    }
+}
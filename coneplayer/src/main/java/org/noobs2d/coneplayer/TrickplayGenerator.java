@@ -0,0 +1,352 @@
+package org.noobs2d.coneplayer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.util.AndroidUtil;
+import org.videolan.libvlc.util.FrameGrabber;
+import org.videolan.libvlc.util.VLCUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Generates {@link Trickplay} sprites for scrub previews, one media at a time, on a dedicated
+ * {@link LibVLC} and background thread, and keeps the most recent ones in memory.
+ * <p>
+ * Frames are extracted in order, from the start of the media to its end. The media is
+ * opened once by a {@link FrameGrabber}, which seeks to the middle of each slice in turn.
+ * Before API 17, where it is not available, the libvlc thumbnailer is used instead: it
+ * always grabs the frame at the middle of its input, so each frame is taken from the media
+ * restricted to its own slice with {@code :start-time} and {@code :stop-time}, which opens
+ * the media once per frame.
+ * <p>
+ * Each frame is extracted into a tile of the background thread, then copied into the sprite
+ * on the main thread, so the sprite is only ever modified where the UI draws it.
+ * <p>
+ * Must be used from the main thread, where listeners are called.
+ */
+public class TrickplayGenerator {
+
+    private static final String TAG = "TrickplayGenerator";
+
+    private final Context context;
+    private final int frameCount;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, Job> jobs = new HashMap<>();
+    private final LruCache<String, Trickplay> cache;
+    private boolean released;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "ConePlayer:Trickplay");
+                }
+            });
+    /* only used on the executor thread */
+    private LibVLC libVLC;
+    private FrameGrabber frameGrabber;
+    private boolean frameGrabberFailed = !AndroidUtil.isJellyBeanMR1OrLater();
+
+    public interface Listener {
+
+        /**
+         * Called after each extracted frame, and once the trickplay is complete.
+         */
+        void onTrickplayUpdated(Trickplay trickplay);
+    }
+
+    /**
+     * @param frameCount number of frames of each trickplay
+     * @param tileWidth width of each frame, in pixels
+     * @param tileHeight height of each frame, in pixels
+     * @param maxCacheBytes maximum size of the sprites kept in memory
+     */
+    public TrickplayGenerator(Context context, int frameCount, int tileWidth, int tileHeight,
+                              int maxCacheBytes) {
+        if (frameCount <= 0)
+            throw new IllegalArgumentException("frameCount should be > 0");
+        this.context = context.getApplicationContext();
+        this.frameCount = frameCount;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.cache = new LruCache<String, Trickplay>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Trickplay trickplay) {
+                return trickplay.getSprite().getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the trickplay of a media if it is in memory, complete or not.
+     */
+    public Trickplay get(Uri uri) {
+        return cache.get(uri.toString());
+    }
+
+    /**
+     * Starts generating the trickplay of a media, unless it is already generated or being
+     * generated.
+     *
+     * @param durationMs duration of the media, or 0 to parse it
+     * @param listener called as frames are extracted, or null
+     */
+    public void generate(Uri uri, long durationMs, Listener listener) {
+        if (released)
+            return;
+        String key = uri.toString();
+        Job job = jobs.get(key);
+        if (job != null) {
+            if (listener != null)
+                job.listeners.add(listener);
+            return;
+        }
+
+        Trickplay trickplay = cache.get(key);
+        if (trickplay != null) {
+            if (listener != null)
+                listener.onTrickplayUpdated(trickplay);
+            return;
+        }
+
+        job = new Job(uri, durationMs);
+        if (listener != null)
+            job.listeners.add(listener);
+        jobs.put(key, job);
+        executor.execute(job);
+    }
+
+    /**
+     * Stops generating the trickplay of a media. Its frames extracted so far are dropped.
+     */
+    public void cancel(Uri uri) {
+        String key = uri.toString();
+        Job job = jobs.remove(key);
+        if (job == null)
+            return;
+        job.cancelled = true;
+        job.listeners.clear();
+        Trickplay trickplay = cache.get(key);
+        if (trickplay != null && !trickplay.isComplete())
+            cache.remove(key);
+    }
+
+    /**
+     * Cancels every generation and drops the cached trickplays. Later calls to
+     * {@link #generate} are ignored.
+     */
+    public void release() {
+        if (released)
+            return;
+        released = true;
+        for (String key : new ArrayList<>(jobs.keySet()))
+            cancel(Uri.parse(key));
+        cache.evictAll();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (frameGrabber != null) {
+                    frameGrabber.release();
+                    frameGrabber = null;
+                }
+                if (libVLC != null) {
+                    libVLC.release();
+                    libVLC = null;
+                }
+            }
+        });
+        executor.shutdown();
+    }
+
+    private final class Job implements Runnable {
+
+        private final Uri uri;
+        private final long durationMs;
+        /* only used on the main thread */
+        private final ArrayList<Listener> listeners = new ArrayList<>(1);
+        private volatile boolean cancelled;
+
+        Job(Uri uri, long durationMs) {
+            this.uri = uri;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled)
+                return;
+            try {
+                extract();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "can't generate the trickplay of " + uri, e);
+                finish(null);
+                // The grabber may have lost its OpenGL context, the next job gets a new one.
+                if (frameGrabber != null) {
+                    FrameGrabber grabber = frameGrabber;
+                    frameGrabber = null;
+                    grabber.release();
+                }
+            }
+        }
+
+        private void extract() {
+            if (libVLC == null)
+                libVLC = new LibVLC(context, new ArrayList<String>());
+            if (frameGrabber == null && !frameGrabberFailed) {
+                try {
+                    frameGrabber = new FrameGrabber(libVLC);
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "can't grab frames, using the libvlc thumbnailer", e);
+                    frameGrabberFailed = true;
+                }
+            }
+
+            if (frameGrabber != null) {
+                Media media = new Media(libVLC, uri);
+                boolean opened = frameGrabber.open(media);
+                media.release();
+                if (!opened) {
+                    Log.w(TAG, "can't play, no trickplay for " + uri);
+                    finish(null);
+                    return;
+                }
+            }
+            try {
+                generate();
+            } finally {
+                if (frameGrabber != null)
+                    frameGrabber.close();
+            }
+        }
+
+        private void generate() {
+            long duration = durationMs > 0 ? durationMs
+                    : frameGrabber != null ? frameGrabber.getLength() : parseDuration();
+            if (duration <= 0) {
+                Log.w(TAG, "unknown duration, no trickplay for " + uri);
+                finish(null);
+                return;
+            }
+
+            final Trickplay trickplay = new Trickplay(uri.toString(), duration, frameCount,
+                    tileWidth, tileHeight);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled)
+                        cache.put(uri.toString(), trickplay);
+                }
+            });
+
+            /* only used on the main thread */
+            Canvas canvas = new Canvas(trickplay.getSprite());
+            Bitmap tile = Bitmap.createBitmap(tileWidth, tileHeight, Bitmap.Config.ARGB_8888);
+            for (int i = 0; i < frameCount && !cancelled; i++) {
+                long timeMs = frameGrabber != null ? grabFrame(trickplay, i, tile)
+                        : extractFrame(trickplay, i, tile);
+                if (timeMs == PlaybackClock.TIME_UNKNOWN)
+                    continue;
+
+                publishFrame(trickplay, canvas, i, timeMs,
+                        tile.copy(Bitmap.Config.ARGB_8888, false));
+            }
+            finish(trickplay);
+        }
+
+        /**
+         * Copies an extracted frame into the sprite on the main thread, where the sprite is
+         * drawn, and notifies the listeners.
+         */
+        private void publishFrame(final Trickplay trickplay, final Canvas canvas,
+                                  final int index, final long timeMs, final Bitmap frame) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        canvas.drawBitmap(frame, index % trickplay.getColumns() * tileWidth,
+                                index / trickplay.getColumns() * tileHeight, null);
+                        trickplay.setExtracted(index, timeMs);
+                        for (Listener listener : listeners)
+                            listener.onTrickplayUpdated(trickplay);
+                    }
+                    frame.recycle();
+                }
+            });
+        }
+
+        /**
+         * Returns the time of the frame grabbed into the tile, or
+         * {@link PlaybackClock#TIME_UNKNOWN} if it failed.
+         */
+        private long grabFrame(Trickplay trickplay, int index, Bitmap tile) {
+            if (!frameGrabber.grab(trickplay.getFrameTimeMs(index), tile))
+                return PlaybackClock.TIME_UNKNOWN;
+            return frameGrabber.getFrameTime();
+        }
+
+        private long extractFrame(Trickplay trickplay, int index, Bitmap tile) {
+            long sliceMs = trickplay.getDurationMs() / frameCount;
+            Media media = new Media(libVLC, uri);
+            media.addOption(String.format(Locale.US, ":start-time=%.3f",
+                    index * sliceMs / 1000.0));
+            media.addOption(String.format(Locale.US, ":stop-time=%.3f",
+                    (index + 1) * sliceMs / 1000.0));
+            boolean filled = VLCUtil.getThumbnail(media, tile);
+            media.release();
+            return filled ? trickplay.getFrameTimeMs(index) : PlaybackClock.TIME_UNKNOWN;
+        }
+
+        private long parseDuration() {
+            Media media = new Media(libVLC, uri);
+            try {
+                return media.parse(Media.Parse.ParseNetwork) ? media.getDuration() : 0;
+            } finally {
+                media.release();
+            }
+        }
+
+        private void finish(final Trickplay trickplay) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    String key = uri.toString();
+                    if (jobs.get(key) == Job.this) {
+                        jobs.remove(key);
+                        // A failed generation must not leave its partial trickplay cached.
+                        Trickplay cached = cache.get(key);
+                        if (trickplay == null && cached != null && !cached.isComplete())
+                            cache.remove(key);
+                    }
+                    if (trickplay != null) {
+                        trickplay.setComplete();
+                        for (Listener listener : listeners)
+                            listener.onTrickplayUpdated(trickplay);
+                    }
+                    listeners.clear();
+                }
+            });
+        }
+    }
+}
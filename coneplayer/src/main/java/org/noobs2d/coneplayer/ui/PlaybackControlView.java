@@ -155,11 +155,12 @@ public class PlaybackControlView
             return;
         }
         int state = player.getPlaybackState();
-        if (state == ConePlayer.STATE_PLAYING) {
+        if (state == ConePlayer.STATE_PLAYING || state == ConePlayer.STATE_BUFFERING) {
             playButton.setVisibility(GONE);
             pauseButton.setVisibility(VISIBLE);
             repeatButton.setVisibility(GONE);
-        } else if (state == ConePlayer.STATE_ENDED || state == ConePlayer.STATE_STOP) {
+        } else if (state == ConePlayer.STATE_ENDED || state == ConePlayer.STATE_STOP
+                || state == ConePlayer.STATE_ERROR) {
             playButton.setVisibility(GONE);
             pauseButton.setVisibility(GONE);
             repeatButton.setVisibility(VISIBLE);
@@ -215,7 +216,7 @@ public class PlaybackControlView
 
         long durationMs = player.getDuration();
         long seekPositionMs = player.getCurrentPosition() + fastForwardMs;
-        if (durationMs != TIME_UNSET) {
+        if (durationMs > 0) {
             seekPositionMs = Math.min(seekPositionMs, durationMs);
         }
         seekTo(seekPositionMs);
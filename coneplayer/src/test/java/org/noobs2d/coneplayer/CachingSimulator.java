@@ -0,0 +1,103 @@
+package org.noobs2d.coneplayer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a trace of recorded {@link CachingSession}s against a {@link CachingPolicy}, to
+ * tune it offline.
+ * <p>
+ * For every recorded session, the policy picks a caching, and the outcome of the session
+ * with that caching is estimated from the recorded one: the startup changes by the caching
+ * difference, and each stall, taken as the average recorded stall, shrinks by the extra
+ * caching (and disappears once it is absorbed) or grows by the missing caching. The
+ * estimated session is then given back to the policy, so that it reacts to its own choices.
+ * Stalls that a smaller caching would have caused in a clean session are not modeled.
+ * <p>
+ * {@link CachingSimulatorTest} replays a recorded trace file with it.
+ */
+final class CachingSimulator {
+
+    static final class Result {
+        int sessionCount;
+        long startupMs;
+        long playTimeMs;
+        int rebufferCount;
+        long stallTimeMs;
+
+        void add(CachingSession session) {
+            sessionCount++;
+            startupMs += session.startupMs;
+            playTimeMs += session.playTimeMs;
+            rebufferCount += session.rebufferCount;
+            stallTimeMs += session.stallTimeMs;
+        }
+
+        float getStallRatio() {
+            long totalMs = stallTimeMs + playTimeMs;
+            return totalMs > 0 ? (float) stallTimeMs / totalMs : 0f;
+        }
+
+        long getAverageStartupMs() {
+            return sessionCount > 0 ? startupMs / sessionCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "sessions=" + sessionCount
+                    + " avgStartupMs=" + getAverageStartupMs()
+                    + " rebuffers=" + rebufferCount
+                    + " stallMs=" + stallTimeMs
+                    + " stallRatio=" + getStallRatio();
+        }
+    }
+
+    private CachingSimulator() {
+    }
+
+    static Result simulate(CachingPolicy policy, List<CachingSession> trace) {
+        Result result = new Result();
+        for (CachingSession recorded : trace) {
+            CachingSession estimated = estimate(recorded, policy.getCachingMs(recorded.host));
+            policy.onSession(estimated);
+            result.add(estimated);
+        }
+        return result;
+    }
+
+    static CachingSession estimate(CachingSession recorded, int cachingMs) {
+        long extraMs = cachingMs - recorded.cachingMs;
+        long startupMs = Math.max(0, recorded.startupMs + extraMs);
+
+        int rebufferCount = 0;
+        long stallTimeMs = 0;
+        if (recorded.rebufferCount > 0) {
+            long averageStallMs = recorded.stallTimeMs / recorded.rebufferCount;
+            long stallMs = averageStallMs - extraMs;
+            if (stallMs > 0) {
+                rebufferCount = recorded.rebufferCount;
+                stallTimeMs = stallMs * rebufferCount;
+            }
+        }
+        return new CachingSession(recorded.host, cachingMs, startupMs, recorded.playTimeMs,
+                rebufferCount, stallTimeMs);
+    }
+
+    static List<CachingSession> readTrace(String path) throws IOException {
+        ArrayList<CachingSession> trace = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#"))
+                    trace.add(CachingSession.parse(line));
+            }
+        } finally {
+            reader.close();
+        }
+        return trace;
+    }
+}
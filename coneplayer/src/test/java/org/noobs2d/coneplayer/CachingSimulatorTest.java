@@ -0,0 +1,110 @@
+package org.noobs2d.coneplayer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+public class CachingSimulatorTest {
+
+    /**
+     * System property naming a trace file to replay, as written by
+     * {@link CachingSession#toString()}, one session per line:
+     * {@code ./gradlew :coneplayer:testDebugUnitTest -DcachingTrace=trace.tsv}.
+     */
+    private static final String TRACE_PROPERTY = "cachingTrace";
+
+    /**
+     * Optional system property with the policy parameters to replay the trace with:
+     * {@code threshold,increase,decrease}.
+     */
+    private static final String POLICY_PROPERTY = "cachingPolicy";
+
+    private static final Logger LOG = Logger.getLogger("CachingSimulatorTest");
+
+    private static final String HOST = "cdn.example.com";
+
+    @Test
+    public void extraCachingShrinksStalls() {
+        CachingSession recorded = new CachingSession(HOST, 1000, 800, 60000, 4, 2000);
+
+        CachingSession estimated = CachingSimulator.estimate(recorded, 1200);
+        assertEquals(1000, estimated.startupMs);
+        assertEquals(4, estimated.rebufferCount);
+        assertEquals(1200, estimated.stallTimeMs);
+    }
+
+    @Test
+    public void absorbedStallsDisappear() {
+        CachingSession recorded = new CachingSession(HOST, 1000, 800, 60000, 4, 2000);
+
+        CachingSession estimated = CachingSimulator.estimate(recorded, 1500);
+        assertEquals(0, estimated.rebufferCount);
+        assertEquals(0, estimated.stallTimeMs);
+    }
+
+    @Test
+    public void missingCachingGrowsStallsAndShortensStartup() {
+        CachingSession recorded = new CachingSession(HOST, 1000, 800, 60000, 2, 1000);
+
+        CachingSession estimated = CachingSimulator.estimate(recorded, 500);
+        assertEquals(300, estimated.startupMs);
+        assertEquals(2, estimated.rebufferCount);
+        assertEquals(2000, estimated.stallTimeMs);
+
+        assertEquals(0, CachingSimulator.estimate(recorded, 100).startupMs);
+    }
+
+    @Test
+    public void policyConvergesOnFlakyHost() {
+        ArrayList<CachingSession> trace = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            trace.add(new CachingSession(HOST, CachingPolicy.DEFAULT_NETWORK_CACHING_MS, 900,
+                    60000, 3, 4500));
+
+        CachingSimulator.Result simulated = CachingSimulator.simulate(new CachingPolicy(), trace);
+        CachingSimulator.Result recorded = sum(trace);
+        assertEquals(trace.size(), simulated.sessionCount);
+        assertTrue(simulated.stallTimeMs < recorded.stallTimeMs);
+        assertTrue(simulated.getAverageStartupMs() > recorded.getAverageStartupMs());
+    }
+
+    @Test
+    public void replayTraceFile() throws IOException {
+        String path = System.getProperty(TRACE_PROPERTY);
+        assumeNotNull(path);
+
+        List<CachingSession> trace = CachingSimulator.readTrace(path);
+        String parameters = System.getProperty(POLICY_PROPERTY);
+        CachingPolicy policy = new CachingPolicy();
+        if (parameters != null) {
+            String[] values = parameters.split(",");
+            policy = new CachingPolicy(Float.parseFloat(values[0]),
+                    Float.parseFloat(values[1]),
+                    Float.parseFloat(values[2]));
+        }
+
+        CachingSimulator.Result recorded = sum(trace);
+        CachingSimulator.Result simulated = CachingSimulator.simulate(policy, trace);
+        LOG.info("recorded:  " + recorded);
+        LOG.info("simulated: " + simulated);
+
+        assertEquals(recorded.sessionCount, simulated.sessionCount);
+        assertEquals(recorded.playTimeMs, simulated.playTimeMs);
+        /* a different caching only changes how long each stall lasts, or absorbs it */
+        assertTrue(simulated.rebufferCount <= recorded.rebufferCount);
+    }
+
+    private static CachingSimulator.Result sum(List<CachingSession> trace) {
+        CachingSimulator.Result result = new CachingSimulator.Result();
+        for (CachingSession session : trace)
+            result.add(session);
+        return result;
+    }
+}
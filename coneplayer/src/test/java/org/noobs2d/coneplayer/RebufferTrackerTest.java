@@ -0,0 +1,158 @@
+package org.noobs2d.coneplayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RebufferTrackerTest {
+
+    private static final float RATIO_TOLERANCE = 1e-6f;
+
+    private final FakeTime time = new FakeTime();
+    private RebufferTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new RebufferTracker(time);
+    }
+
+    @Test
+    public void initialBufferingIsNotARebuffer() {
+        tracker.reset();
+        tracker.onBuffering(0);
+        tracker.onBuffering(50);
+        tracker.setPlaying(true);
+        assertFalse(tracker.isStarted());
+
+        tracker.onBuffering(100);
+        assertTrue(tracker.isStarted());
+        assertEquals(0, tracker.getRebufferCount());
+    }
+
+    @Test
+    public void stallAfterStartIsARebuffer() {
+        tracker.reset();
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+
+        tracker.onBuffering(20);
+        tracker.onBuffering(60);
+        tracker.onBuffering(100);
+        tracker.onBuffering(10);
+        assertEquals(2, tracker.getRebufferCount());
+    }
+
+    @Test
+    public void seekBufferingIsNotARebuffer() {
+        tracker.reset();
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+
+        tracker.onSeek();
+        tracker.onBuffering(30);
+        tracker.onBuffering(100);
+        assertEquals(0, tracker.getRebufferCount());
+
+        tracker.onBuffering(30);
+        assertEquals(1, tracker.getRebufferCount());
+    }
+
+    @Test
+    public void stallAfterGaplessSwapIsARebuffer() {
+        // The previous item played and ended.
+        tracker.reset();
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+        tracker.setPlaying(false);
+
+        // The preloaded item is swapped in: it reports no buffering before playing.
+        tracker.resetBuffered();
+        assertFalse(tracker.isStarted());
+        tracker.setPlaying(true);
+        assertTrue(tracker.isStarted());
+        assertEquals(0, tracker.getRebufferCount());
+
+        tracker.onBuffering(40);
+        assertEquals(1, tracker.getRebufferCount());
+        tracker.onBuffering(100);
+        assertEquals(1, tracker.getRebufferCount());
+    }
+
+    @Test
+    public void stallTimeAndRatio() {
+        tracker.reset();
+        time.advance(300);
+        tracker.onBuffering(50);
+        time.advance(200);
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+        assertEquals(500, tracker.getStartupMs());
+
+        time.advance(4000);
+        tracker.onBuffering(20);
+        time.advance(1000);
+        tracker.onBuffering(100);
+        time.advance(5000);
+
+        assertEquals(1, tracker.getRebufferCount());
+        assertEquals(1000, tracker.getStallTimeMs());
+        assertEquals(9000, tracker.getPlayTimeMs());
+        assertEquals(0.1f, tracker.getStallRatio(), RATIO_TOLERANCE);
+    }
+
+    @Test
+    public void seekAndPauseAreNotStallTime() {
+        tracker.reset();
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+        time.advance(2000);
+
+        tracker.onSeek();
+        tracker.onBuffering(0);
+        time.advance(3000);
+        tracker.onBuffering(100);
+        time.advance(2000);
+
+        tracker.setPlaying(false);
+        time.advance(10000);
+        tracker.onBuffering(40);
+        time.advance(1000);
+        tracker.onBuffering(100);
+        tracker.setPlaying(true);
+        time.advance(1000);
+
+        assertEquals(0, tracker.getRebufferCount());
+        assertEquals(0, tracker.getStallTimeMs());
+        assertEquals(5000, tracker.getPlayTimeMs());
+        assertEquals(0f, tracker.getStallRatio(), RATIO_TOLERANCE);
+    }
+
+    @Test
+    public void nothingIsMeasuredBeforeStart() {
+        tracker.reset();
+        tracker.setPlaying(true);
+        tracker.onBuffering(30);
+        time.advance(2000);
+
+        assertEquals(PlaybackClock.TIME_UNKNOWN, tracker.getStartupMs());
+        assertEquals(0, tracker.getStallTimeMs());
+        assertEquals(0, tracker.getPlayTimeMs());
+        assertEquals(0f, tracker.getStallRatio(), RATIO_TOLERANCE);
+    }
+
+    private static final class FakeTime implements RebufferTracker.TimeSource {
+        private long nowMs = 1000000;
+
+        void advance(long ms) {
+            nowMs += ms;
+        }
+
+        @Override
+        public long elapsedRealtimeMs() {
+            return nowMs;
+        }
+    }
+}
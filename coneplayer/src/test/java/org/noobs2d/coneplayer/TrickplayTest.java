@@ -0,0 +1,60 @@
+package org.noobs2d.coneplayer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrickplayTest {
+
+    private static final int TILE_WIDTH = 160;
+    private static final int TILE_HEIGHT = 90;
+
+    @Test
+    public void frameTimesAreOrderedInsideTheirSlices() {
+        long[] durationsMs = {1, 99, 100, 1001, 3600000, 7261337};
+        int[] frameCounts = {1, 7, 10, 100};
+        for (long durationMs : durationsMs) {
+            for (int frameCount : frameCounts) {
+                Trickplay trickplay = new Trickplay("file:///video.mp4", durationMs, frameCount,
+                        TILE_WIDTH, TILE_HEIGHT);
+                long previousMs = -1;
+                for (int i = 0; i < frameCount; i++) {
+                    long timeMs = trickplay.getFrameTimeMs(i);
+                    String frame = "frame " + i + "/" + frameCount + " of " + durationMs + "ms";
+                    assertTrue(frame, timeMs >= previousMs);
+                    assertTrue(frame, timeMs >= i * durationMs / frameCount);
+                    assertTrue(frame, timeMs < durationMs);
+                    if (durationMs >= frameCount) {
+                        assertTrue(frame, timeMs > previousMs);
+                        assertEquals(frame, i, trickplay.getFrameIndex(timeMs));
+                    }
+                    previousMs = timeMs;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void positionsOutsideTheMediaPreviewTheFirstAndLastFrames() {
+        Trickplay trickplay = new Trickplay("file:///video.mp4", 60000, 12,
+                TILE_WIDTH, TILE_HEIGHT);
+        assertEquals(0, trickplay.getFrameIndex(-1));
+        assertEquals(0, trickplay.getFrameIndex(0));
+        assertEquals(11, trickplay.getFrameIndex(59999));
+        assertEquals(11, trickplay.getFrameIndex(60000));
+        assertEquals(11, trickplay.getFrameIndex(120000));
+    }
+
+    @Test
+    public void extractedFramesKeepTheirGrabTime() {
+        Trickplay trickplay = new Trickplay("file:///video.mp4", 60000, 4,
+                TILE_WIDTH, TILE_HEIGHT);
+        assertEquals(PlaybackClock.TIME_UNKNOWN, trickplay.getExtractedTimeMs(2));
+
+        trickplay.setExtracted(2, 37480);
+        assertEquals(37480, trickplay.getExtractedTimeMs(2));
+        assertEquals(PlaybackClock.TIME_UNKNOWN, trickplay.getExtractedTimeMs(1));
+        assertEquals(1, trickplay.getExtractedCount());
+    }
+}
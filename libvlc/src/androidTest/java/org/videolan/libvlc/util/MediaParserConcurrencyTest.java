@@ -0,0 +1,318 @@
+/*****************************************************************************
+ * MediaParserConcurrencyTest.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.MediaMetaCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link MediaParser} tasks over parses that block until the test completes them, and
+ * checks the concurrency bound, the order of the results and cancellation during a parse.
+ *
+ * An instrumentation test since Uri can't be created in local unit tests; the parses don't
+ * use libvlc.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaParserConcurrencyTest {
+    private static final long TIMEOUT_MS = 5000;
+    /* how long a job that must not start is waited for */
+    private static final long QUIET_MS = 200;
+
+    /* delivers on the parser thread */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final BlockingJobs mJobs = new BlockingJobs();
+    private MediaParser mParser;
+
+    @After
+    public void tearDown() {
+        mJobs.stopAll();
+        if (mParser != null)
+            mParser.release();
+    }
+
+    @Test
+    public void atMostMaxConcurrencyParsesRunAtOnce() throws InterruptedException {
+        final int maxConcurrency = 3;
+        final List<Uri> uris = uris(12);
+        mParser = new MediaParser(mJobs, null, maxConcurrency);
+        final Results results = new Results();
+        mParser.parse(uris, results, DIRECT);
+
+        final ArrayList<BlockingJob> running = new ArrayList<BlockingJob>();
+        for (int i = 0; i < maxConcurrency; ++i)
+            running.add(mJobs.awaitStarted());
+        assertNull("more than " + maxConcurrency + " parses started",
+                mJobs.mStarted.poll(QUIET_MS, TimeUnit.MILLISECONDS));
+
+        /* each completion starts exactly one more parse */
+        for (int started = maxConcurrency; started < uris.size(); ++started) {
+            running.remove(0).complete(Media.ParsedStatus.Done);
+            running.add(mJobs.awaitStarted());
+            assertEquals(maxConcurrency, mJobs.mRunning.get());
+        }
+        for (BlockingJob job : running)
+            job.complete(Media.ParsedStatus.Done);
+
+        assertTrue(results.awaitFinished());
+        assertEquals(Boolean.FALSE, results.mCancelled);
+        assertEquals(maxConcurrency, mJobs.mMaxRunning.get());
+        assertEquals(uris.size(), mJobs.mCreated.get());
+        assertEquals(0, mJobs.mRunning.get());
+        assertEquals(uris.size(), results.mUris.size());
+    }
+
+    @Test
+    public void resultsFollowTheCompletionOrder() throws InterruptedException {
+        final List<Uri> uris = uris(3);
+        mParser = new MediaParser(mJobs, null, uris.size());
+        final Results results = new Results();
+        mParser.parse(uris, results, DIRECT);
+
+        final ArrayList<BlockingJob> jobs = new ArrayList<BlockingJob>();
+        for (int i = 0; i < uris.size(); ++i)
+            jobs.add(mJobs.awaitStarted());
+        /* started in the order of the collection */
+        for (int i = 0; i < uris.size(); ++i)
+            assertEquals(uris.get(i), jobs.get(i).mUri);
+
+        jobs.get(2).complete(Media.ParsedStatus.Done);
+        assertTrue(results.awaitParsed());
+        jobs.get(0).complete(Media.ParsedStatus.Failed);
+        assertTrue(results.awaitParsed());
+        jobs.get(1).complete(Media.ParsedStatus.Timeout);
+        assertTrue(results.awaitFinished());
+
+        assertEquals(uris.get(2), results.mUris.get(0));
+        assertEquals(uris.get(0), results.mUris.get(1));
+        assertEquals(uris.get(1), results.mUris.get(2));
+        assertEquals(Media.ParsedStatus.Done, (int) results.mStatuses.get(0));
+        assertEquals(Media.ParsedStatus.Failed, (int) results.mStatuses.get(1));
+        assertEquals(Media.ParsedStatus.Timeout, (int) results.mStatuses.get(2));
+        for (int i = 0; i < uris.size(); ++i)
+            assertEquals(i + 1, (int) results.mProgress.get(i));
+    }
+
+    @Test
+    public void cancelDuringParseReleasesTheRunningParses() throws InterruptedException {
+        final int maxConcurrency = 2;
+        mParser = new MediaParser(mJobs, null, maxConcurrency);
+        final Results results = new Results();
+        final MediaParser.Task task = mParser.parse(uris(5), results, DIRECT);
+
+        final BlockingJob first = mJobs.awaitStarted();
+        final BlockingJob second = mJobs.awaitStarted();
+        first.complete(Media.ParsedStatus.Done);
+        final BlockingJob third = mJobs.awaitStarted();
+
+        task.cancel();
+        assertTrue(results.awaitFinished());
+        assertEquals(Boolean.TRUE, results.mCancelled);
+        assertTrue(second.awaitReleased());
+        assertTrue(third.awaitReleased());
+        assertEquals(0, mJobs.mRunning.get());
+
+        /* a parse finishing after the cancel is dropped, and doesn't start another one */
+        second.complete(Media.ParsedStatus.Done);
+        assertNull(mJobs.mStarted.poll(QUIET_MS, TimeUnit.MILLISECONDS));
+        assertEquals(3, mJobs.mCreated.get());
+        assertEquals(1, results.mUris.size());
+        assertEquals(1, results.mFinishedCount.get());
+    }
+
+    private static List<Uri> uris(int count) {
+        final ArrayList<Uri> uris = new ArrayList<Uri>(count);
+        for (int i = 0; i < count; ++i)
+            uris.add(Uri.parse("file:///sdcard/video" + i + ".mp4"));
+        return uris;
+    }
+
+    private static class BlockingJobs implements MediaParser.JobFactory {
+        final LinkedBlockingQueue<BlockingJob> mStarted = new LinkedBlockingQueue<BlockingJob>();
+        final ArrayList<BlockingJob> mAll = new ArrayList<BlockingJob>();
+        final AtomicInteger mCreated = new AtomicInteger();
+        final AtomicInteger mRunning = new AtomicInteger();
+        final AtomicInteger mMaxRunning = new AtomicInteger();
+
+        @Override
+        public MediaParser.Job create(Uri uri) {
+            mCreated.incrementAndGet();
+            final BlockingJob job = new BlockingJob(this, uri);
+            synchronized (mAll) {
+                mAll.add(job);
+            }
+            return job;
+        }
+
+        BlockingJob awaitStarted() throws InterruptedException {
+            final BlockingJob job = mStarted.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("no parse started", job);
+            return job;
+        }
+
+        void stopAll() {
+            synchronized (mAll) {
+                for (BlockingJob job : mAll)
+                    job.stop();
+            }
+        }
+    }
+
+    /**
+     * Blocks a thread of its own until completed, like the libvlc preparser does.
+     */
+    private static class BlockingJob implements MediaParser.Job {
+        final Uri mUri;
+        private final BlockingJobs mJobs;
+        private final CountDownLatch mGate = new CountDownLatch(1);
+        private final CountDownLatch mReleased = new CountDownLatch(1);
+        private volatile int mStatus = Media.ParsedStatus.Failed;
+        private volatile boolean mStopped = false;
+
+        BlockingJob(BlockingJobs jobs, Uri uri) {
+            mJobs = jobs;
+            mUri = uri;
+        }
+
+        @Override
+        public boolean start(final Executor parserThread, final MediaParser.JobListener listener) {
+            final int running = mJobs.mRunning.incrementAndGet();
+            int max;
+            while ((max = mJobs.mMaxRunning.get()) < running
+                    && !mJobs.mMaxRunning.compareAndSet(max, running)) {
+            }
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mGate.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (mStopped)
+                        return;
+                    /* even once released, to check that a late result is ignored */
+                    try {
+                        parserThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                listener.onParsed(mStatus);
+                            }
+                        });
+                    } catch (RejectedExecutionException ignored) {
+                        /* the parser was released */
+                    }
+                }
+            }, "BlockingJob").start();
+            mJobs.mStarted.add(this);
+            return true;
+        }
+
+        @Override
+        public MediaMetaCache.Entry getEntry(MediaMetaCache cache) {
+            return null;
+        }
+
+        @Override
+        public void release() {
+            mJobs.mRunning.decrementAndGet();
+            mReleased.countDown();
+        }
+
+        void complete(int status) {
+            mStatus = status;
+            mGate.countDown();
+        }
+
+        /* ends the thread without any result */
+        void stop() {
+            mStopped = true;
+            mGate.countDown();
+        }
+
+        boolean awaitReleased() throws InterruptedException {
+            return mReleased.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class Results implements MediaParser.Listener {
+        final List<Uri> mUris = new ArrayList<Uri>();
+        final List<Integer> mStatuses = new ArrayList<Integer>();
+        final List<Integer> mProgress = new ArrayList<Integer>();
+        final AtomicInteger mFinishedCount = new AtomicInteger();
+        volatile Boolean mCancelled;
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+        private final Semaphore mParsed = new Semaphore(0);
+
+        @Override
+        public synchronized void onMediaParsed(Uri uri, int status, MediaMetaCache.Entry entry) {
+            mUris.add(uri);
+            mStatuses.add(status);
+            mParsed.release();
+        }
+
+        @Override
+        public synchronized void onProgress(int done, int total) {
+            mProgress.add(done);
+        }
+
+        @Override
+        public void onFinished(boolean cancelled) {
+            mCancelled = cancelled;
+            mFinishedCount.incrementAndGet();
+            mFinished.countDown();
+        }
+
+        boolean awaitParsed() throws InterruptedException {
+            return mParsed.tryAcquire(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        boolean awaitFinished() throws InterruptedException {
+            return mFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
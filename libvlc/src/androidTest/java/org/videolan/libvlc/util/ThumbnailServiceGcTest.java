@@ -0,0 +1,184 @@
+/*****************************************************************************
+ * ThumbnailServiceGcTest.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.videolan.libvlc.LibVLC;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Scrolls a synthetic grid of thumbnails with and without a {@link BitmapPool}, and compares
+ * the garbage collections and the allocations of both.
+ *
+ * Every tile is a thumbnail of the same video, given as an instrumentation argument:
+ * {@code -e videoUri file:///sdcard/video.mp4}, optionally with {@code -e gridItems 1000}.
+ * Skipped without it. The memory cache is disabled so that every tile is decoded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailServiceGcTest {
+    private static final String TAG = "ThumbnailServiceGcTest";
+    private static final String ARG_VIDEO_URI = "videoUri";
+    private static final String ARG_GRID_ITEMS = "gridItems";
+    private static final int DEFAULT_GRID_ITEMS = 1000;
+    private static final int TILE_WIDTH = 160;
+    private static final int TILE_HEIGHT = 90;
+    /* tiles on screen, released once scrolled out */
+    private static final int VISIBLE_TILES = 24;
+    private static final int WARMUP_TILES = VISIBLE_TILES;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final class Stats {
+        long gcCount;
+        long allocatedBytes;
+        int thumbnails;
+
+        @Override
+        public String toString() {
+            return thumbnails + " thumbnails, " + gcCount + " GCs, " + allocatedBytes
+                    + " bytes allocated";
+        }
+    }
+
+    @Test
+    public void pooledScrollAllocatesLess() throws InterruptedException {
+        final String uri = InstrumentationRegistry.getArguments().getString(ARG_VIDEO_URI);
+        assumeNotNull(uri);
+        assumeTrue(AndroidUtil.isJellyBeanMR1OrLater());
+        final String items = InstrumentationRegistry.getArguments().getString(ARG_GRID_ITEMS);
+        final int gridItems = items != null ? Integer.parseInt(items) : DEFAULT_GRID_ITEMS;
+
+        final LibVLC libVLC = new LibVLC(InstrumentationRegistry.getTargetContext(),
+                new ArrayList<String>());
+        try {
+            final Stats unpooled = scroll(libVLC, Uri.parse(uri), gridItems, null);
+            final Stats pooled = scroll(libVLC, Uri.parse(uri), gridItems,
+                    new BitmapPool(2 * VISIBLE_TILES * TILE_WIDTH * TILE_HEIGHT * 4));
+            Log.i(TAG, "without pool: " + unpooled);
+            Log.i(TAG, "with pool: " + pooled);
+
+            assertTrue("tiles failed without pool", unpooled.thumbnails == gridItems);
+            assertTrue("tiles failed with pool", pooled.thumbnails == gridItems);
+            assertTrue("pooled: " + pooled + ", unpooled: " + unpooled,
+                    pooled.allocatedBytes < unpooled.allocatedBytes);
+            assertTrue("pooled: " + pooled + ", unpooled: " + unpooled,
+                    pooled.gcCount <= unpooled.gcCount);
+        } finally {
+            libVLC.release();
+        }
+    }
+
+    private Stats scroll(LibVLC libVLC, Uri uri, int gridItems, BitmapPool pool)
+            throws InterruptedException {
+        final ThumbnailService service = new ThumbnailService(libVLC, 1, 1, null, 0);
+        service.setBitmapPool(pool);
+        final ArrayDeque<Bitmap> visible = new ArrayDeque<Bitmap>();
+        final Stats stats = new Stats();
+        try {
+            for (int i = 0; i < WARMUP_TILES; ++i)
+                loadTile(service, uri, visible, null);
+
+            Runtime.getRuntime().gc();
+            Debug.resetAllCounts();
+            Debug.startAllocCounting();
+            final long gcCountBefore = getGcCount();
+            for (int i = 0; i < gridItems; ++i)
+                loadTile(service, uri, visible, stats);
+            Debug.stopAllocCounting();
+            stats.allocatedBytes = Debug.getGlobalAllocSize();
+            stats.gcCount = getGcCount() - gcCountBefore;
+        } finally {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (Bitmap bitmap : visible)
+                        service.release(bitmap);
+                    visible.clear();
+                    service.release();
+                }
+            });
+        }
+        return stats;
+    }
+
+    /* load one tile, as when it is scrolled in, and release the tile scrolled out */
+    private void loadTile(final ThumbnailService service, final Uri uri,
+                          final ArrayDeque<Bitmap> visible, final Stats stats)
+            throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                service.load(uri, TILE_WIDTH, TILE_HEIGHT, new ThumbnailService.Callback() {
+                    @Override
+                    public void onThumbnail(Uri uri, Bitmap bitmap) {
+                        if (bitmap != null) {
+                            if (stats != null)
+                                stats.thumbnails++;
+                            visible.addLast(bitmap);
+                            if (visible.size() > VISIBLE_TILES)
+                                service.release(visible.removeFirst());
+                        }
+                        delivered.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue("no thumbnail delivered", delivered.await(30, TimeUnit.SECONDS));
+    }
+
+    private void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    private static long getGcCount() {
+        if (Build.VERSION.SDK_INT >= 23)
+            return Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count"));
+        return Debug.getGlobalGcInvocationCount();
+    }
+}
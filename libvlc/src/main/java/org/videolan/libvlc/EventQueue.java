@@ -0,0 +1,151 @@
+/*****************************************************************************
+ * EventQueue.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Pending event deliveries for one thread or executor.
+ *
+ * Events posted while a drain is already scheduled are appended to the same batch, so a
+ * burst of native events costs a single Handler message (or Executor task) instead of one
+ * per event. Pending deliveries are kept in a ring buffer, no allocation is done per event.
+ */
+final class EventQueue implements Runnable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static EventQueue sMainQueue = null;
+
+    private final Handler mHandler;
+    private final Executor mExecutor;
+    private Registration[] mRegistrations = new Registration[INITIAL_CAPACITY];
+    private VLCEvent[] mEvents = new VLCEvent[INITIAL_CAPACITY];
+    private int mHead = 0;
+    private int mSize = 0;
+    private boolean mScheduled = false;
+
+    /**
+     * A listener registered on a {@link VLCObject}, with the queue it is delivered through.
+     */
+    static final class Registration {
+        final VLCEvent.Listener listener;
+        final EventQueue queue;
+        final long eventMask;
+        volatile boolean active = true;
+
+        Registration(VLCEvent.Listener listener, EventQueue queue, long eventMask) {
+            this.listener = listener;
+            this.queue = queue;
+            this.eventMask = eventMask;
+        }
+    }
+
+    EventQueue(Handler handler) {
+        mHandler = handler;
+        mExecutor = null;
+    }
+
+    EventQueue(Executor executor) {
+        mHandler = null;
+        mExecutor = executor;
+    }
+
+    /**
+     * Get the queue shared by every listener delivered on the android main thread.
+     */
+    static synchronized EventQueue getMainQueue() {
+        if (sMainQueue == null)
+            sMainQueue = new EventQueue(new Handler(Looper.getMainLooper()));
+        return sMainQueue;
+    }
+
+    void post(Registration registration, VLCEvent event) {
+        synchronized (this) {
+            if (mSize == mEvents.length)
+                grow();
+            final int tail = (mHead + mSize) % mEvents.length;
+            mRegistrations[tail] = registration;
+            mEvents[tail] = event;
+            mSize++;
+            if (mScheduled)
+                return;
+            mScheduled = true;
+        }
+        if (mHandler != null)
+            mHandler.post(this);
+        else
+            mExecutor.execute(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        int count;
+        synchronized (this) {
+            count = mSize;
+        }
+        /* only drain what was there when the batch started, events posted meanwhile go to the
+         * next batch so that a busy producer can't hold the looper forever */
+        while (count-- > 0) {
+            final Registration registration;
+            final VLCEvent event;
+            synchronized (this) {
+                registration = mRegistrations[mHead];
+                event = mEvents[mHead];
+                mRegistrations[mHead] = null;
+                mEvents[mHead] = null;
+                mHead = (mHead + 1) % mEvents.length;
+                mSize--;
+            }
+            if (registration.active)
+                registration.listener.onEvent(event);
+        }
+        boolean reschedule;
+        synchronized (this) {
+            reschedule = mSize > 0;
+            if (!reschedule)
+                mScheduled = false;
+        }
+        if (reschedule) {
+            if (mHandler != null)
+                mHandler.post(this);
+            else
+                mExecutor.execute(this);
+        }
+    }
+
+    private void grow() {
+        final int capacity = mEvents.length * 2;
+        final Registration[] registrations = new Registration[capacity];
+        final VLCEvent[] events = new VLCEvent[capacity];
+        for (int i = 0; i < mSize; ++i) {
+            final int index = (mHead + i) % mEvents.length;
+            registrations[i] = mRegistrations[index];
+            events[i] = mEvents[index];
+        }
+        mRegistrations = registrations;
+        mEvents = events;
+        mHead = 0;
+    }
+}
@@ -41,6 +41,21 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
     /** Native crash handler */
     private static OnNativeCrashListener sOnNativeCrashListener;
 
+    /**
+     * Phases of the libvlc initialization, see {@link #getLoadDuration(int)}
+     */
+    public static class LoadPhase {
+        public static final int Anw = 0;
+        public static final int Iomx = 1;
+        public static final int Compat = 2;
+        public static final int Vlc = 3;
+        public static final int VlcJni = 4;
+        public static final int NativeNew = 5;
+        public static final int MAX = 6;
+    }
+
+    private static final long sLoadDurations[] = new long[LoadPhase.MAX];
+
     /**
      * Create a LibVLC withs options
      *
@@ -79,7 +94,9 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
             }
         }
 
+        final long start = System.nanoTime();
         nativeNew(options.toArray(new String[options.size()]), context.getDir("vlc", Context.MODE_PRIVATE).getAbsolutePath());
+        setLoadDuration(LoadPhase.NativeNew, start);
     }
 
     /**
@@ -141,6 +158,27 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
         nativeSetUserAgent(name, http);
     }
 
+    /**
+     * Get how long a phase of the libvlc initialization took on the thread that ran it.
+     * Library phases are only run once per process, {@link LoadPhase#NativeNew} is the
+     * duration of the last LibVLC construction.
+     *
+     * @param phase see {@link LoadPhase}
+     * @return duration in nanoseconds, or 0 if the phase didn't run (yet)
+     */
+    public static long getLoadDuration(int phase) {
+        synchronized (sLoadDurations) {
+            return sLoadDurations[phase];
+        }
+    }
+
+    private static void setLoadDuration(int phase, long start) {
+        final long duration = System.nanoTime() - start;
+        synchronized (sLoadDurations) {
+            sLoadDurations[phase] = duration;
+        }
+    }
+
     /* JNI */
     private native void nativeNew(String[] options, String homePath);
     private native void nativeRelease();
@@ -153,7 +191,9 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
             return;
         sLoaded = true;
 
+        long start;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+            start = System.nanoTime();
             try {
                 if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.HONEYCOMB_MR1)
                     System.loadLibrary("anw.10");
@@ -168,7 +208,9 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
             } catch (Throwable t) {
                 Log.d(TAG, "anw library not loaded");
             }
+            setLoadDuration(LoadPhase.Anw, start);
 
+            start = System.nanoTime();
             try {
                 if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD_MR1)
                     System.loadLibrary("iomx.10");
@@ -185,15 +227,22 @@ public class LibVLC extends VLCObject<LibVLC.Event> {
                 if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
                     Log.w(TAG, "Unable to load the iomx library: " + t);
             }
+            setLoadDuration(LoadPhase.Iomx, start);
         }
 
+        start = System.nanoTime();
         try {
             System.loadLibrary("compat.7");
         } catch (Throwable ignored) {}
+        setLoadDuration(LoadPhase.Compat, start);
 
         try {
+            start = System.nanoTime();
             System.loadLibrary("vlc");
+            setLoadDuration(LoadPhase.Vlc, start);
+            start = System.nanoTime();
             System.loadLibrary("vlcjni");
+            setLoadDuration(LoadPhase.VlcJni, start);
         } catch (UnsatisfiedLinkError ule) {
             Log.e(TAG, "Can't load vlcjni library: " + ule);
             /// FIXME Alert user
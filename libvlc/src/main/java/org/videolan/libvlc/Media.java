@@ -27,6 +27,8 @@ import org.videolan.libvlc.util.AndroidUtil;
 import org.videolan.libvlc.util.HWDecoderUtil;
 
 import java.io.FileDescriptor;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @SuppressWarnings("unused, JniMissingFunction")
 public class Media extends VLCObject<Media.Event> {
@@ -59,6 +61,14 @@ public class Media extends VLCObject<Media.Event> {
         public int getParsedStatus() {
             return (int) arg1;
         }
+
+        /**
+         * Build an event mask from event types, to be used with
+         * {@link Media#addEventListener(EventListener, Executor, long)}.
+         */
+        public static long mask(int... types) {
+            return eventMask(types);
+        }
     }
 
     public interface EventListener extends VLCEvent.Listener<Media.Event> {}
@@ -185,7 +195,7 @@ public class Media extends VLCObject<Media.Event> {
         public final int channels;
         public final int rate;
 
-        private AudioTrack(String codec, String originalCodec, int id, int profile,
+        AudioTrack(String codec, String originalCodec, int id, int profile,
                 int level, int bitrate, String language, String description,
                 int channels, int rate) {
             super(Type.Audio, codec, originalCodec, id, profile, level, bitrate, language, description);
@@ -194,8 +204,8 @@ public class Media extends VLCObject<Media.Event> {
         }
     }
 
-    @SuppressWarnings("unused") /* Used from JNI */
-    private static Track createAudioTrackFromNative(String codec, String originalCodec, int id, int profile,
+    /* Used from JNI and MediaMetaCache */
+    static Track createAudioTrackFromNative(String codec, String originalCodec, int id, int profile,
             int level, int bitrate, String language, String description,
             int channels, int rate) {
         return new AudioTrack(codec, originalCodec, id, profile,
@@ -214,7 +224,7 @@ public class Media extends VLCObject<Media.Event> {
         public final int frameRateNum;
         public final int frameRateDen;
 
-        private VideoTrack(String codec, String originalCodec, int id, int profile,
+        VideoTrack(String codec, String originalCodec, int id, int profile,
                 int level, int bitrate, String language, String description,
                 int height, int width, int sarNum, int sarDen, int frameRateNum, int frameRateDen) {
             super(Type.Video, codec, originalCodec, id, profile, level, bitrate, language, description);
@@ -227,8 +237,8 @@ public class Media extends VLCObject<Media.Event> {
         }
     }
 
-    @SuppressWarnings("unused") /* Used from JNI */
-    private static Track createVideoTrackFromNative(String codec, String originalCodec, int id, int profile,
+    /* Used from JNI and MediaMetaCache */
+    static Track createVideoTrackFromNative(String codec, String originalCodec, int id, int profile,
             int level, int bitrate, String language, String description,
             int height, int width, int sarNum, int sarDen, int frameRateNum, int frameRateDen) {
         return new VideoTrack(codec, originalCodec, id, profile,
@@ -242,7 +252,7 @@ public class Media extends VLCObject<Media.Event> {
     public static class SubtitleTrack extends Track {
         public final String encoding;
 
-        private SubtitleTrack(String codec, String originalCodec, int id, int profile,
+        SubtitleTrack(String codec, String originalCodec, int id, int profile,
                 int level, int bitrate, String language, String description,
                 String encoding) {
             super(Type.Text, codec, originalCodec, id, profile, level, bitrate, language, description);
@@ -250,8 +260,8 @@ public class Media extends VLCObject<Media.Event> {
         }
     }
 
-    @SuppressWarnings("unused") /* Used from JNI */
-    private static Track createSubtitleTrackFromNative(String codec, String originalCodec, int id, int profile,
+    /* Used from JNI and MediaMetaCache */
+    static Track createSubtitleTrackFromNative(String codec, String originalCodec, int id, int profile,
             int level, int bitrate, String language, String description,
             String encoding) {
         return new SubtitleTrack(codec, originalCodec, id, profile,
@@ -263,15 +273,15 @@ public class Media extends VLCObject<Media.Event> {
      * see libvlc_subtitle_track_t
      */
     public static class UnknownTrack extends Track {
-        private UnknownTrack(String codec, String originalCodec, int id, int profile,
-                             int level, int bitrate, String language, String description) {
+        UnknownTrack(String codec, String originalCodec, int id, int profile,
+                     int level, int bitrate, String language, String description) {
             super(Type.Unknown, codec, originalCodec, id, profile, level, bitrate, language, description);
         }
     }
 
-    @SuppressWarnings("unused") /* Used from JNI */
-    private static Track createUnknownTrackFromNative(String codec, String originalCodec, int id, int profile,
-                                                      int level, int bitrate, String language, String description) {
+    /* Used from JNI and MediaMetaCache */
+    static Track createUnknownTrackFromNative(String codec, String originalCodec, int id, int profile,
+                                              int level, int bitrate, String language, String description) {
         return new UnknownTrack(codec, originalCodec, id, profile,
                 level, bitrate, language, description);
     }
@@ -308,9 +318,14 @@ public class Media extends VLCObject<Media.Event> {
     private static final int PARSE_STATUS_PARSED = 0x02;
 
     private Uri mUri = null;
+    private final String mMrl;
     private MediaList mSubItems = null;
     private int mParseStatus = PARSE_STATUS_INIT;
-    private final String mNativeMetas[] = new String[Meta.MAX];
+    /* Metas are read without locking: each slot holds the meta, NULL_META, or a marker
+     * meaning "not fetched". An invalidation stores a new marker, so that a fetch started
+     * before it can't publish its stale result. */
+    private static final String NULL_META = new String();
+    private final AtomicReferenceArray<Object> mNativeMetas = newMetaArray();
     private Track mNativeTracks[] = null;
     private long mDuration = -1;
     private int mState = -1;
@@ -325,7 +340,8 @@ public class Media extends VLCObject<Media.Event> {
      */
     public Media(LibVLC libVLC, String path) {
         nativeNewFromPath(libVLC, path);
-        mUri = UriFromMrl(nativeGetMrl());
+        mMrl = nativeGetMrl();
+        mUri = UriFromMrl(mMrl);
     }
 
     /**
@@ -335,7 +351,8 @@ public class Media extends VLCObject<Media.Event> {
      * @param uri a valid RFC 2396 Uri
      */
     public Media(LibVLC libVLC, Uri uri) {
-        nativeNewFromLocation(libVLC, locationFromUri(uri));
+        mMrl = locationFromUri(uri);
+        nativeNewFromLocation(libVLC, mMrl);
         mUri = uri;
     }
 
@@ -347,7 +364,8 @@ public class Media extends VLCObject<Media.Event> {
      */
     public Media(LibVLC libVLC, FileDescriptor fd) {
         nativeNewFromFd(libVLC, fd);
-        mUri = UriFromMrl(nativeGetMrl());
+        mMrl = nativeGetMrl();
+        mUri = UriFromMrl(mMrl);
     }
 
     /**
@@ -361,7 +379,8 @@ public class Media extends VLCObject<Media.Event> {
         if (!ml.isLocked())
             throw new IllegalStateException("MediaList should be locked");
         nativeNewFromMediaList(ml, index);
-        mUri = UriFromMrl(nativeGetMrl());
+        mMrl = nativeGetMrl();
+        mUri = UriFromMrl(mMrl);
     }
 
     private static final String URI_AUTHORIZED_CHARS = "!'()*";
@@ -371,29 +390,7 @@ public class Media extends VLCObject<Media.Event> {
      * Therefore, decode the characters authorized by Android Uri when creating an Uri from VLC.
      */
     private static Uri UriFromMrl(String mrl) {
-        final char array[] = mrl.toCharArray();
-        final StringBuilder sb = new StringBuilder(array.length);
-
-        for (int i = 0; i < array.length; ++i) {
-            final char c = array[i];
-            if (c == '%') {
-                if (array.length - i >= 3) {
-                    try {
-                        final int hex = Integer.parseInt(new String(array, i + 1, 2), 16);
-                        if (URI_AUTHORIZED_CHARS.indexOf(hex) != -1) {
-                            sb.append((char) hex);
-                            i += 2;
-                            continue;
-                        }
-                    } catch (NumberFormatException ignored) {
-                    }
-                }
-
-            }
-            sb.append(c);
-        }
-
-        return Uri.parse(sb.toString());
+        return Uri.parse(decodeMrl(mrl));
     }
 
     /**
@@ -401,16 +398,66 @@ public class Media extends VLCObject<Media.Event> {
      * Therefore, encode the characters authorized by Android Uri when creating a mrl from an Uri.
      */
     protected static String locationFromUri(Uri uri) {
-        final char array[] = uri.toString().toCharArray();
-        final StringBuilder sb = new StringBuilder(array.length * 2);
+        return encodeMrl(uri.toString());
+    }
+
+    /**
+     * Decode the escaped characters authorized by Android Uri in a mrl.
+     * The mrl is returned as is when it doesn't contain any of them.
+     */
+    static String decodeMrl(String mrl) {
+        final int length = mrl.length();
+        StringBuilder sb = null;
+        int copied = 0;
+
+        for (int i = mrl.indexOf('%'); i != -1 && i + 2 < length; i = mrl.indexOf('%', i + 1)) {
+            final int high = Character.digit(mrl.charAt(i + 1), 16);
+            final int low = Character.digit(mrl.charAt(i + 2), 16);
+            if (high == -1 || low == -1)
+                continue;
+            final char c = (char) ((high << 4) | low);
+            if (URI_AUTHORIZED_CHARS.indexOf(c) == -1)
+                continue;
 
-        for (final char c : array) {
-            if (URI_AUTHORIZED_CHARS.indexOf(c) != -1)
-                sb.append("%").append(Integer.toHexString(c));
-            else
-                sb.append(c);
+            if (sb == null)
+                sb = new StringBuilder(length);
+            sb.append(mrl, copied, i).append(c);
+            copied = i + 3;
+            i += 2;
         }
+        if (sb == null)
+            return mrl;
 
+        sb.append(mrl, copied, length);
+        return sb.toString();
+    }
+
+    /**
+     * Escape the characters authorized by Android Uri but not by VLC in an Uri string.
+     * The string is returned as is when it doesn't contain any of them.
+     */
+    static String encodeMrl(String location) {
+        final int length = location.length();
+        StringBuilder sb = null;
+        int copied = 0;
+
+        for (int i = 0; i < length; ++i) {
+            final char c = location.charAt(i);
+            if (URI_AUTHORIZED_CHARS.indexOf(c) == -1)
+                continue;
+
+            if (sb == null)
+                sb = new StringBuilder(length + 8);
+            sb.append(location, copied, i)
+                    .append('%')
+                    .append(Character.forDigit(c >> 4, 16))
+                    .append(Character.forDigit(c & 0xf, 16));
+            copied = i + 1;
+        }
+        if (sb == null)
+            return location;
+
+        sb.append(location, copied, length);
         return sb.toString();
     }
 
@@ -418,6 +465,24 @@ public class Media extends VLCObject<Media.Event> {
         super.setEventListener(listener);
     }
 
+    /**
+     * Add an event listener called from an Executor, only receiving some event types.
+     *
+     * @param listener see {@link EventListener}
+     * @param executor executor the listener will be called from
+     * @param eventMask see {@link Event#mask(int...)}
+     */
+    public void addEventListener(EventListener listener, Executor executor, long eventMask) {
+        super.addEventListener(listener, executor, eventMask);
+    }
+
+    /**
+     * Remove a listener added with {@link #addEventListener} or {@link #setEventListener}.
+     */
+    public void removeEventListener(EventListener listener) {
+        super.removeEventListener(listener);
+    }
+
     @Override
     protected synchronized Event onEventNative(int eventType, long arg1, float arg2) {
         switch (eventType) {
@@ -425,7 +490,7 @@ public class Media extends VLCObject<Media.Event> {
             // either we update all metas (if first call) or we update a specific meta
             int id = (int) arg1;
             if (id >= 0 && id < Meta.MAX)
-                mNativeMetas[id] = null;
+                mNativeMetas.set(id, new Object());
             return new Event(eventType, arg1);
         case Event.DurationChanged:
             mDuration = -1;
@@ -447,6 +512,13 @@ public class Media extends VLCObject<Media.Event> {
         return mUri;
     }
 
+    /**
+     * Get the MRL of the Media, as given to VLC. It never changes, so it is read without locking.
+     */
+    public String getMrl() {
+        return mMrl;
+    }
+
     /**
      * Get the duration of the media.
      */
@@ -644,6 +716,73 @@ public class Media extends VLCObject<Media.Event> {
         return tracks[idx];
     }
 
+    /**
+     * Get the number of tracks of a type. Like every track accessor, the first call fetches
+     * and caches all the tracks of the media; later calls don't create any object.
+     *
+     * @param type see {@link Track.Type}
+     */
+    public int getTrackCount(int type) {
+        return countTracks(getTracks(), type);
+    }
+
+    /**
+     * Get a Track of a type.
+     *
+     * @param type see {@link Track.Type}
+     * @param idx index of the track among the tracks of this type
+     * @return Track or null if not idx is not valid
+     * @see #getTrackCount(int)
+     */
+    public Track getTrack(int type, int idx) {
+        return findTrack(getTracks(), type, idx);
+    }
+
+    static int countTracks(Track[] tracks, int type) {
+        if (tracks == null)
+            return 0;
+        int count = 0;
+        for (Track track : tracks) {
+            if (track.type == type)
+                ++count;
+        }
+        return count;
+    }
+
+    static Track findTrack(Track[] tracks, int type, int idx) {
+        if (tracks == null || idx < 0)
+            return null;
+        for (Track track : tracks) {
+            if (track.type == type && idx-- == 0)
+                return track;
+        }
+        return null;
+    }
+
+    /**
+     * Get the width of the first video track, or 0 if there is none.
+     */
+    public int getVideoWidth() {
+        return getVideoWidth(getTracks());
+    }
+
+    /**
+     * Get the height of the first video track, or 0 if there is none.
+     */
+    public int getVideoHeight() {
+        return getVideoHeight(getTracks());
+    }
+
+    static int getVideoWidth(Track[] tracks) {
+        final Track track = findTrack(tracks, Track.Type.Video, 0);
+        return track instanceof VideoTrack ? ((VideoTrack) track).width : 0;
+    }
+
+    static int getVideoHeight(Track[] tracks) {
+        final Track track = findTrack(tracks, Track.Type.Video, 0);
+        return track instanceof VideoTrack ? ((VideoTrack) track).height : 0;
+    }
+
     /**
      * Get a Meta.
      *
@@ -654,18 +793,22 @@ public class Media extends VLCObject<Media.Event> {
         if (id < 0 || id >= Meta.MAX)
             return null;
 
-        synchronized (this) {
-            if (mNativeMetas[id] != null)
-                return mNativeMetas[id];
-            if (isReleased())
-                return null;
-        }
+        final Object cached = mNativeMetas.get(id);
+        if (cached instanceof String)
+            return cached == NULL_META ? null : (String) cached;
+        if (isReleased())
+            return null;
 
         final String meta = nativeGetMeta(id);
-        synchronized (this) {
-            mNativeMetas[id] = meta;
-            return meta;
-        }
+        mNativeMetas.compareAndSet(id, cached, meta != null ? meta : NULL_META);
+        return meta;
+    }
+
+    private static AtomicReferenceArray<Object> newMetaArray() {
+        final AtomicReferenceArray<Object> metas = new AtomicReferenceArray<Object>(Meta.MAX);
+        for (int i = 0; i < Meta.MAX; ++i)
+            metas.set(i, new Object());
+        return metas;
     }
 
 
@@ -22,6 +22,8 @@ package org.videolan.libvlc;
 
 import android.util.SparseArray;
 
+import java.util.concurrent.Executor;
+
 @SuppressWarnings("unused, JniMissingFunction")
 public class MediaList extends VLCObject<MediaList.Event> {
     private final static String TAG = "LibVLC/MediaList";
@@ -116,6 +118,23 @@ public class MediaList extends VLCObject<MediaList.Event> {
         super.setEventListener(listener);
     }
 
+    /**
+     * Add an event listener called from an Executor instead of the main thread.
+     *
+     * @param listener see {@link EventListener}
+     * @param executor executor the listener will be called from
+     */
+    public void addEventListener(EventListener listener, Executor executor) {
+        super.addEventListener(listener, executor, VLCEvent.ALL_EVENTS);
+    }
+
+    /**
+     * Remove a listener added with {@link #addEventListener} or {@link #setEventListener}.
+     */
+    public void removeEventListener(EventListener listener) {
+        super.removeEventListener(listener);
+    }
+
     @Override
     protected synchronized Event onEventNative(int eventType, long arg1, float arg2) {
         if (mLocked)
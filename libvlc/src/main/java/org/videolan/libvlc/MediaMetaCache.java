@@ -0,0 +1,580 @@
+/*****************************************************************************
+ * MediaMetaCache.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of the parsing result of medias: duration, type, tracks and metas.
+ *
+ * Entries are keyed by Uri and validated on lookup: against the size and modification time
+ * of local files, or against a validator given by the caller (an ETag for instance) for other
+ * medias. Entries are kept serialized in memory and in a single binary file, and the least
+ * recently used ones are evicted past maxEntries or maxBytes.
+ *
+ * This class is thread safe. The file is loaded on first use and only written by
+ * {@link #flush()}.
+ */
+public class MediaMetaCache {
+    private static final String TAG = "LibVLC/MediaMetaCache";
+
+    private static final int MAGIC = 0x564d4331; /* "VMC1" */
+    private static final int VERSION = 1;
+
+    private final File mFile;
+    private final Object mFlushLock = new Object();
+    private final int mMaxEntries;
+    private final long mMaxBytes;
+    private final LinkedHashMap<String, byte[]> mEntries =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long mBytes = 0;
+    private boolean mLoaded = false;
+    private boolean mDirty = false;
+
+    /**
+     * Parsing result of a media, as stored in the cache.
+     *
+     * Tracks read from the cache are decoded on the first {@link #getTrack} call only: track
+     * counts and the first video track size are known without creating any Track.
+     */
+    public static class Entry {
+        private final long mDuration;
+        private final int mType;
+        private final String[] mMetas;
+        private final byte[] mTrackTypes;
+        private final int mVideoWidth;
+        private final int mVideoHeight;
+        private final byte[] mTrackData;
+        private final int mTrackOffset;
+        private volatile Media.Track[] mTracks;
+
+        Entry(long duration, int type, String[] metas, Media.Track[] tracks) {
+            mDuration = duration;
+            mType = type;
+            mMetas = metas;
+            mTracks = tracks;
+            mTrackTypes = new byte[tracks.length];
+            for (int i = 0; i < tracks.length; ++i)
+                mTrackTypes[i] = (byte) tracks[i].type;
+            mVideoWidth = Media.getVideoWidth(tracks);
+            mVideoHeight = Media.getVideoHeight(tracks);
+            mTrackData = null;
+            mTrackOffset = 0;
+        }
+
+        private Entry(long duration, int type, String[] metas, byte[] trackTypes,
+                      int videoWidth, int videoHeight, byte[] trackData, int trackOffset) {
+            mDuration = duration;
+            mType = type;
+            mMetas = metas;
+            mTrackTypes = trackTypes;
+            mVideoWidth = videoWidth;
+            mVideoHeight = videoHeight;
+            mTrackData = trackData;
+            mTrackOffset = trackOffset;
+        }
+
+        public long getDuration() {
+            return mDuration;
+        }
+
+        /**
+         * @see Media.Type
+         */
+        public int getType() {
+            return mType;
+        }
+
+        public int getTrackCount() {
+            return mTrackTypes.length;
+        }
+
+        /**
+         * @see Media#getTrackCount(int)
+         */
+        public int getTrackCount(int type) {
+            int count = 0;
+            for (byte trackType : mTrackTypes) {
+                if (trackType == type)
+                    ++count;
+            }
+            return count;
+        }
+
+        /**
+         * @see Media#getTrack(int)
+         */
+        @Nullable
+        public Media.Track getTrack(int idx) {
+            if (idx < 0 || idx >= mTrackTypes.length)
+                return null;
+            return getTracks()[idx];
+        }
+
+        /**
+         * @see Media#getTrack(int, int)
+         */
+        @Nullable
+        public Media.Track getTrack(int type, int idx) {
+            for (int i = 0; i < mTrackTypes.length; ++i) {
+                if (mTrackTypes[i] == type && idx-- == 0)
+                    return getTrack(i);
+            }
+            return null;
+        }
+
+        /**
+         * @see Media#getVideoWidth()
+         */
+        public int getVideoWidth() {
+            return mVideoWidth;
+        }
+
+        /**
+         * @see Media#getVideoHeight()
+         */
+        public int getVideoHeight() {
+            return mVideoHeight;
+        }
+
+        /**
+         * Returns true once the tracks are decoded, or if they never were encoded.
+         */
+        boolean hasDecodedTracks() {
+            return mTracks != null;
+        }
+
+        private Media.Track[] getTracks() {
+            Media.Track[] tracks = mTracks;
+            if (tracks != null)
+                return tracks;
+            tracks = new Media.Track[mTrackTypes.length];
+            try {
+                final DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                        mTrackData, mTrackOffset, mTrackData.length - mTrackOffset));
+                for (int i = 0; i < tracks.length; ++i)
+                    tracks[i] = readTrack(in);
+            } catch (IOException e) {
+                /* validated when the entry was read */
+                throw new IllegalStateException(e);
+            }
+            mTracks = tracks;
+            return tracks;
+        }
+
+        /**
+         * @see Media#getMeta(int)
+         */
+        @Nullable
+        public String getMeta(int id) {
+            if (id < 0 || id >= mMetas.length)
+                return null;
+            return mMetas[id];
+        }
+    }
+
+    /**
+     * @param file file the cache is persisted to
+     * @param maxEntries maximum number of cached medias
+     * @param maxBytes maximum size of the cache file
+     */
+    public MediaMetaCache(File file, int maxEntries, long maxBytes) {
+        mFile = file;
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Get the cached entry of a media.
+     *
+     * @param uri uri of the media
+     * @param validator validator of a non local media (ETag...), or null
+     * @return the entry, or null if the media isn't cached or changed since
+     */
+    @Nullable
+    public Entry get(Uri uri, @Nullable String validator) {
+        final String key = uri.toString();
+        final String expected = getValidator(uri, validator);
+        final byte[] data;
+        synchronized (this) {
+            load();
+            data = mEntries.get(key);
+        }
+        if (data == null)
+            return null;
+
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (!expected.equals(in.readUTF())) {
+                remove(key, data);
+                return null;
+            }
+            return readEntry(in, data);
+        } catch (IOException e) {
+            remove(key, data);
+            return null;
+        }
+    }
+
+    @Nullable
+    public Entry get(Uri uri) {
+        return get(uri, null);
+    }
+
+    /**
+     * Store the parsing result of a parsed media. This Media should be alive (not released).
+     *
+     * @param validator validator of a non local media (ETag...), or null
+     * @return the stored entry
+     */
+    public Entry put(Media media, @Nullable String validator) {
+        final Uri uri = media.getUri();
+        final Entry entry = createEntry(media);
+        final byte[] data;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(getValidator(uri, validator));
+            writeEntry(out, entry);
+            out.flush();
+            data = bytes.toByteArray();
+        } catch (IOException e) {
+            /* metas too long to be encoded */
+            return entry;
+        }
+
+        synchronized (this) {
+            load();
+            final byte[] previous = mEntries.put(uri.toString(), data);
+            if (previous != null)
+                mBytes -= previous.length;
+            mBytes += data.length;
+            mDirty = true;
+            trim();
+        }
+        return entry;
+    }
+
+    public Entry put(Media media) {
+        return put(media, null);
+    }
+
+    /**
+     * Get the cached entry of a media, or parse it and cache the result. This Media should be
+     * alive (not released).
+     *
+     * @param flags see {@link Media.Parse}
+     * @return the entry, or null if the media couldn't be parsed
+     */
+    @Nullable
+    public Entry parse(Media media, int flags) {
+        final Entry entry = get(media.getUri(), null);
+        if (entry != null)
+            return entry;
+        if (!media.isParsed() && !media.parse(flags))
+            return null;
+        return put(media, null);
+    }
+
+    /**
+     * Write the cache to its file, if it changed since it was loaded.
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            flushLocked();
+        }
+    }
+
+    private void flushLocked() {
+        final ArrayList<Map.Entry<String, byte[]>> entries;
+        synchronized (this) {
+            if (!mDirty)
+                return;
+            entries = new ArrayList<Map.Entry<String, byte[]>>(mEntries.entrySet());
+            mDirty = false;
+        }
+
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            /* least recently used first, so that the order survives a reload */
+            for (Map.Entry<String, byte[]> entry : entries) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile))
+                throw new IOException("can't rename " + tmp);
+        } catch (IOException e) {
+            Log.w(TAG, "can't write " + mFile, e);
+            synchronized (this) {
+                mDirty = true;
+            }
+        } finally {
+            close(out);
+            tmp.delete();
+        }
+    }
+
+    private synchronized void remove(String key, byte[] data) {
+        if (mEntries.get(key) == data) {
+            mEntries.remove(key);
+            mBytes -= data.length;
+            mDirty = true;
+        }
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<String, byte[]>> it = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxEntries || mBytes > mMaxBytes) && it.hasNext()) {
+            mBytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private void load() {
+        if (mLoaded)
+            return;
+        mLoaded = true;
+        if (!mFile.exists())
+            return;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+            final int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                final String key = in.readUTF();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                mEntries.put(key, data);
+                mBytes += data.length;
+            }
+            trim();
+        } catch (IOException e) {
+            Log.w(TAG, "can't read " + mFile, e);
+            mEntries.clear();
+            mBytes = 0;
+        } finally {
+            close(in);
+        }
+    }
+
+    private static String getValidator(Uri uri, String validator) {
+        if ("file".equals(uri.getScheme()) && uri.getPath() != null) {
+            final File file = new File(uri.getPath());
+            return file.length() + ":" + file.lastModified();
+        }
+        return validator != null ? validator : "";
+    }
+
+    /**
+     * Snapshot the parsing result of a parsed media, without caching it.
+     */
+    public static Entry createEntry(Media media) {
+        final Media.Track[] tracks = new Media.Track[media.getTrackCount()];
+        for (int i = 0; i < tracks.length; ++i)
+            tracks[i] = media.getTrack(i);
+        final String[] metas = new String[Media.Meta.MAX];
+        for (int i = 0; i < metas.length; ++i)
+            metas[i] = media.getMeta(i);
+        return new Entry(media.getDuration(), media.getType(), metas, tracks);
+    }
+
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.mDuration);
+        out.writeInt(entry.mType);
+
+        /* metas are mostly null: write a bitmask of the present ones */
+        int present = 0;
+        for (int i = 0; i < entry.mMetas.length; ++i) {
+            if (entry.mMetas[i] != null)
+                present |= 1 << i;
+        }
+        out.writeInt(present);
+        for (String meta : entry.mMetas) {
+            if (meta != null)
+                out.writeUTF(meta);
+        }
+
+        final Media.Track[] tracks = entry.getTracks();
+        out.writeShort(tracks.length);
+        for (Media.Track track : tracks) {
+            out.writeByte(track.type);
+            writeString(out, track.codec);
+            writeString(out, track.originalCodec);
+            out.writeInt(track.id);
+            out.writeInt(track.profile);
+            out.writeInt(track.level);
+            out.writeInt(track.bitrate);
+            writeString(out, track.language);
+            writeString(out, track.description);
+            if (track instanceof Media.AudioTrack) {
+                final Media.AudioTrack audio = (Media.AudioTrack) track;
+                out.writeInt(audio.channels);
+                out.writeInt(audio.rate);
+            } else if (track instanceof Media.VideoTrack) {
+                final Media.VideoTrack video = (Media.VideoTrack) track;
+                out.writeInt(video.height);
+                out.writeInt(video.width);
+                out.writeInt(video.sarNum);
+                out.writeInt(video.sarDen);
+                out.writeInt(video.frameRateNum);
+                out.writeInt(video.frameRateDen);
+            } else if (track instanceof Media.SubtitleTrack) {
+                writeString(out, ((Media.SubtitleTrack) track).encoding);
+            }
+        }
+    }
+
+    static Entry readEntry(DataInputStream in, byte[] data) throws IOException {
+        final long duration = in.readLong();
+        final int type = in.readInt();
+
+        final int present = in.readInt();
+        final String[] metas = new String[Media.Meta.MAX];
+        for (int i = 0; i < metas.length; ++i) {
+            if ((present & (1 << i)) != 0)
+                metas[i] = in.readUTF();
+        }
+
+        /* only index the tracks here, they are decoded when first asked for */
+        final byte[] trackTypes = new byte[in.readShort()];
+        final int trackOffset = data.length - in.available();
+        /* the size of the first video track, like Media#getVideoWidth() */
+        boolean hasVideo = false;
+        int videoWidth = 0;
+        int videoHeight = 0;
+        for (int i = 0; i < trackTypes.length; ++i) {
+            trackTypes[i] = in.readByte();
+            skipString(in);
+            skipString(in);
+            skipFully(in, 16);
+            skipString(in);
+            skipString(in);
+            switch (trackTypes[i]) {
+                case Media.Track.Type.Audio:
+                    skipFully(in, 8);
+                    break;
+                case Media.Track.Type.Video:
+                    if (!hasVideo) {
+                        hasVideo = true;
+                        videoHeight = in.readInt();
+                        videoWidth = in.readInt();
+                        skipFully(in, 16);
+                    } else {
+                        skipFully(in, 24);
+                    }
+                    break;
+                case Media.Track.Type.Text:
+                    skipString(in);
+                    break;
+            }
+        }
+        if (in.available() != 0)
+            throw new IOException("invalid track data");
+        return new Entry(duration, type, metas, trackTypes, videoWidth, videoHeight, data,
+                trackOffset);
+    }
+
+    private static Media.Track readTrack(DataInputStream in) throws IOException {
+        final int trackType = in.readByte();
+        final String codec = readString(in);
+        final String originalCodec = readString(in);
+        final int id = in.readInt();
+        final int profile = in.readInt();
+        final int level = in.readInt();
+        final int bitrate = in.readInt();
+        final String language = readString(in);
+        final String description = readString(in);
+        switch (trackType) {
+            case Media.Track.Type.Audio:
+                return Media.createAudioTrackFromNative(codec, originalCodec, id, profile,
+                        level, bitrate, language, description, in.readInt(), in.readInt());
+            case Media.Track.Type.Video:
+                return Media.createVideoTrackFromNative(codec, originalCodec, id, profile,
+                        level, bitrate, language, description, in.readInt(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            case Media.Track.Type.Text:
+                return Media.createSubtitleTrackFromNative(codec, originalCodec, id, profile,
+                        level, bitrate, language, description, readString(in));
+            default:
+                return Media.createUnknownTrackFromNative(codec, originalCodec, id, profile,
+                        level, bitrate, language, description);
+        }
+    }
+
+    private static void skipString(DataInputStream in) throws IOException {
+        if (in.readBoolean())
+            skipFully(in, in.readUnsignedShort());
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        if (in.skipBytes(count) != count)
+            throw new EOFException();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -23,8 +23,10 @@
 package org.videolan.libvlc;
 
 import android.net.Uri;
+import android.os.Handler;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
 @SuppressWarnings("unused, JniMissingFunction")
 public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
@@ -85,6 +87,15 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         public float getBuffering() {
             return arg2;
         }
+
+        /**
+         * Build an event mask from event types, to be used with
+         * {@link MediaPlayer#setEventListener(EventListener, long)} and
+         * {@link MediaPlayer#addEventListener(EventListener, Handler, long)}.
+         */
+        public static long mask(int... types) {
+            return eventMask(types);
+        }
     }
 
     public interface EventListener extends VLCEvent.Listener<MediaPlayer.Event> {}
@@ -828,15 +839,95 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         super.setEventListener(listener);
     }
 
+    /**
+     * Set an event listener only receiving some event types.
+     * Events of other types are not even created if no other listener wants them.
+     *
+     * @param listener see {@link EventListener}
+     * @param eventMask see {@link Event#mask(int...)}
+     */
+    public synchronized void setEventListener(EventListener listener, long eventMask) {
+        super.setEventListener(listener, eventMask);
+    }
+
+    /**
+     * Add an event listener called on the thread of a Handler.
+     *
+     * @param listener see {@link EventListener}
+     * @param handler handler of the thread the listener will be called on
+     */
+    public void addEventListener(EventListener listener, Handler handler) {
+        super.addEventListener(listener, handler, VLCEvent.ALL_EVENTS);
+    }
+
+    /**
+     * Add an event listener called on the thread of a Handler, only receiving some event types.
+     *
+     * @param listener see {@link EventListener}
+     * @param handler handler of the thread the listener will be called on
+     * @param eventMask see {@link Event#mask(int...)}
+     */
+    public void addEventListener(EventListener listener, Handler handler, long eventMask) {
+        super.addEventListener(listener, handler, eventMask);
+    }
+
+    /**
+     * Add an event listener called from an Executor.
+     *
+     * @param listener see {@link EventListener}
+     * @param executor executor the listener will be called from
+     */
+    public void addEventListener(EventListener listener, Executor executor) {
+        super.addEventListener(listener, executor, VLCEvent.ALL_EVENTS);
+    }
+
+    /**
+     * Add an event listener called from an Executor, only receiving some event types.
+     *
+     * @param listener see {@link EventListener}
+     * @param executor executor the listener will be called from
+     * @param eventMask see {@link Event#mask(int...)}
+     */
+    public void addEventListener(EventListener listener, Executor executor, long eventMask) {
+        super.addEventListener(listener, executor, eventMask);
+    }
+
+    /**
+     * Remove a listener added with {@link #addEventListener} or {@link #setEventListener}.
+     */
+    public void removeEventListener(EventListener listener) {
+        super.removeEventListener(listener);
+    }
+
     @Override
-    protected synchronized Event onEventNative(int eventType, long arg1, float arg2) {
+    protected Event onEventNative(int eventType, long arg1, float arg2) {
+        /* only the vout count is shared with other threads, time and position updates are
+         * dispatched without locking */
+        switch (eventType) {
+            case Event.MediaChanged:
+            case Event.Stopped:
+            case Event.EndReached:
+            case Event.EncounteredError:
+                synchronized (this) {
+                    mVoutCount = 0;
+                    notify();
+                }
+                break;
+            case Event.Vout:
+                synchronized (this) {
+                    mVoutCount = (int) arg1;
+                    notify();
+                }
+                break;
+        }
+        if (!isEventObserved(eventType))
+            return null;
+
         switch (eventType) {
             case Event.MediaChanged:
             case Event.Stopped:
             case Event.EndReached:
             case Event.EncounteredError:
-                mVoutCount = 0;
-                notify();
             case Event.Opening:
             case Event.Buffering:
                 return new Event(eventType, arg2);
@@ -848,9 +939,6 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
             case Event.PositionChanged:
                 return new Event(eventType, arg2);
             case Event.Vout:
-                mVoutCount = (int) arg1;
-                notify();
-                return new Event(eventType, arg1);
             case Event.ESAdded:
             case Event.ESDeleted:
             case Event.SeekableChanged:
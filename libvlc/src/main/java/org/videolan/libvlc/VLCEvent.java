@@ -41,6 +41,26 @@ abstract class VLCEvent {
         this.arg2 = arg2;
     }
 
+    /**
+     * Mask matching every event type.
+     */
+    static final long ALL_EVENTS = -1L;
+
+    /**
+     * Get the bit of an event type in an event mask.
+     * Event types of one VLCObject only differ by their low bits.
+     */
+    static long eventBit(int type) {
+        return 1L << (type & 0x3f);
+    }
+
+    static long eventMask(int... types) {
+        long mask = 0;
+        for (int type : types)
+            mask |= eventBit(type);
+        return mask;
+    }
+
     /**
      * Listener for libvlc events
      *
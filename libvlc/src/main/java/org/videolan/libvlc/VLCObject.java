@@ -21,15 +21,22 @@
 package org.videolan.libvlc;
 
 import android.os.Handler;
-import android.os.Looper;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
 
 @SuppressWarnings("JniMissingFunction")
 abstract class VLCObject<T extends VLCEvent> {
-    private VLCEvent.Listener<T> mEventListener = null;
-    private Handler mHandler = null;
+    private static final EventQueue.Registration[] NO_REGISTRATIONS = new EventQueue.Registration[0];
+
+    private EventQueue.Registration mEventListenerRegistration = null;
+    /* copy on write, so that dispatchEventFromNative reads it without locking */
+    private volatile EventQueue.Registration[] mRegistrations = NO_REGISTRATIONS;
+    /* union of the event masks of all registrations */
+    private volatile long mEventMask = 0;
     private int mNativeRefCount = 1;
+    /* set once the ref count reaches 0, read without lock by dispatchEventFromNative */
+    private volatile boolean mReleased = false;
 
     /**
      * Returns true if native object is released
@@ -66,11 +73,14 @@ abstract class VLCObject<T extends VLCEvent> {
                 refCount = --mNativeRefCount;
             }
             // clear event list
-            if (refCount == 0)
-                setEventListener(null);
+            if (refCount == 0) {
+                mReleased = true;
+                removeAllEventListeners();
+            }
         }
         if (refCount == 0) {
-            // detach events when not synchronized since onEvent is executed synchronized
+            // detach events when not synchronized since onEventNative may lock this object;
+            // it waits for the event being dispatched, if any
             nativeDetachEvents();
             synchronized (this) {
                 onReleaseNative();
@@ -80,20 +90,127 @@ abstract class VLCObject<T extends VLCEvent> {
 
     /**
      * Set an event listener.
-     * Events are sent via the android main thread.
+     * Events are sent via the android main thread, in one message for all the events
+     * received between two runs of the main looper.
      *
      * @param listener see {@link VLCEvent.Listener}
      */
     protected synchronized void setEventListener(VLCEvent.Listener<T> listener) {
-        if (mHandler != null)
-            mHandler.removeCallbacksAndMessages(null);
-        mEventListener = listener;
-        if (mEventListener != null && mHandler == null)
-            mHandler = new Handler(Looper.getMainLooper());
+        setEventListener(listener, VLCEvent.ALL_EVENTS);
+    }
+
+    /**
+     * Set an event listener only interested in some event types.
+     * Events are sent via the android main thread.
+     *
+     * @param listener see {@link VLCEvent.Listener}
+     * @param eventMask mask of the event types the listener will receive
+     */
+    protected synchronized void setEventListener(VLCEvent.Listener<T> listener, long eventMask) {
+        if (mEventListenerRegistration != null) {
+            removeRegistration(mEventListenerRegistration);
+            mEventListenerRegistration = null;
+        }
+        if (listener != null) {
+            mEventListenerRegistration = new EventQueue.Registration(listener,
+                    EventQueue.getMainQueue(), eventMask);
+            addRegistration(mEventListenerRegistration);
+        }
+    }
+
+    /**
+     * Add an event listener delivered on the looper of a Handler.
+     * Events received between two runs of the looper are delivered in one message.
+     *
+     * @param listener see {@link VLCEvent.Listener}
+     * @param handler handler of the thread the listener will be called on
+     * @param eventMask mask of the event types the listener will receive
+     */
+    protected synchronized void addEventListener(VLCEvent.Listener<T> listener, Handler handler,
+                                                 long eventMask) {
+        addRegistration(new EventQueue.Registration(listener, new EventQueue(handler), eventMask));
+    }
+
+    /**
+     * Add an event listener delivered through an Executor.
+     * Events received while a delivery task is pending are delivered by that same task.
+     *
+     * @param listener see {@link VLCEvent.Listener}
+     * @param executor executor the listener will be called from
+     * @param eventMask mask of the event types the listener will receive
+     */
+    protected synchronized void addEventListener(VLCEvent.Listener<T> listener, Executor executor,
+                                                 long eventMask) {
+        addRegistration(new EventQueue.Registration(listener, new EventQueue(executor), eventMask));
     }
 
     /**
-     * Called when libvlc send events.
+     * Returns true if at least one listener is interested in an event type.
+     * onEventNative implementations use it to avoid creating events nobody will receive.
+     */
+    protected boolean isEventObserved(int eventType) {
+        return (mEventMask & VLCEvent.eventBit(eventType)) != 0;
+    }
+
+    /**
+     * Remove an event listener added with addEventListener or setEventListener.
+     * Pending events are not delivered to this listener anymore.
+     */
+    protected synchronized void removeEventListener(VLCEvent.Listener<T> listener) {
+        for (EventQueue.Registration registration : mRegistrations) {
+            if (registration.listener == listener) {
+                removeRegistration(registration);
+                if (registration == mEventListenerRegistration)
+                    mEventListenerRegistration = null;
+            }
+        }
+    }
+
+    private synchronized void removeAllEventListeners() {
+        for (EventQueue.Registration registration : mRegistrations)
+            registration.active = false;
+        mRegistrations = NO_REGISTRATIONS;
+        mEventMask = 0;
+        mEventListenerRegistration = null;
+    }
+
+    private void addRegistration(EventQueue.Registration registration) {
+        final EventQueue.Registration[] registrations = mRegistrations;
+        final EventQueue.Registration[] newRegistrations =
+                new EventQueue.Registration[registrations.length + 1];
+        System.arraycopy(registrations, 0, newRegistrations, 0, registrations.length);
+        newRegistrations[registrations.length] = registration;
+        mRegistrations = newRegistrations;
+        mEventMask |= registration.eventMask;
+    }
+
+    private void removeRegistration(EventQueue.Registration registration) {
+        registration.active = false;
+        final EventQueue.Registration[] registrations = mRegistrations;
+        int index = -1;
+        for (int i = 0; i < registrations.length; ++i) {
+            if (registrations[i] == registration) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1)
+            return;
+        final EventQueue.Registration[] newRegistrations =
+                new EventQueue.Registration[registrations.length - 1];
+        System.arraycopy(registrations, 0, newRegistrations, 0, index);
+        System.arraycopy(registrations, index + 1, newRegistrations, index,
+                registrations.length - index - 1);
+        mRegistrations = newRegistrations;
+        long eventMask = 0;
+        for (EventQueue.Registration r : newRegistrations)
+            eventMask |= r.eventMask;
+        mEventMask = eventMask;
+    }
+
+    /**
+     * Called when libvlc send events, from the libvlc event thread and without holding the
+     * lock of this object: implementations synchronize the state they touch themselves.
      *
      * @param eventType event type
      * @param arg1 first argument
@@ -112,27 +229,19 @@ abstract class VLCObject<T extends VLCEvent> {
     /* JNI */
     @SuppressWarnings("unused") /* Used from JNI */
     private long mInstance = 0;
-    private synchronized void dispatchEventFromNative(int eventType, long arg1, float arg2) {
-        if (isReleased())
+    private void dispatchEventFromNative(int eventType, long arg1, float arg2) {
+        if (mReleased)
             return;
         final T event = onEventNative(eventType, arg1, arg2);
+        if (event == null)
+            return;
 
-        class EventRunnable implements Runnable {
-            private final VLCEvent.Listener<T> listener;
-            private final T event;
-
-            private EventRunnable(VLCEvent.Listener<T> listener, T event) {
-                this.listener = listener;
-                this.event = event;
-            }
-            @Override
-            public void run() {
-                listener.onEvent(event);
-            }
+        final long eventBit = VLCEvent.eventBit(eventType);
+        final EventQueue.Registration[] registrations = mRegistrations;
+        for (int i = 0; i < registrations.length; ++i) {
+            if ((registrations[i].eventMask & eventBit) != 0)
+                registrations[i].queue.post(registrations[i], event);
         }
-
-        if (event != null && mEventListener != null && mHandler != null)
-            mHandler.post(new EventRunnable(mEventListener, event));
     }
     private native void nativeDetachEvents();
 
@@ -0,0 +1,113 @@
+/*****************************************************************************
+ * BitmapPool.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Bitmaps kept for reuse, by size, so that generating many thumbnails of a few sizes doesn't
+ * allocate a new bitmap each time.
+ *
+ * A released bitmap is given back by {@link #acquire(int, int)} for the same width and height.
+ * The pool holds at most maxBytes of bitmaps: a bitmap released while the pool is full is
+ * left to the garbage collector.
+ */
+public class BitmapPool {
+    private final long mMaxBytes;
+    private final HashMap<Long, ArrayDeque<Bitmap>> mBuckets = new HashMap<Long, ArrayDeque<Bitmap>>();
+    private long mBytes = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    /**
+     * @param maxBytes maximum size of the bitmaps kept in the pool
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    /**
+     * Get a mutable ARGB_8888 bitmap, reused if possible. Its previous content isn't cleared.
+     */
+    public Bitmap acquire(int width, int height) {
+        synchronized (this) {
+            final ArrayDeque<Bitmap> bucket = mBuckets.get(key(width, height));
+            final Bitmap bitmap = bucket != null ? bucket.poll() : null;
+            if (bitmap != null) {
+                mBytes -= bitmap.getByteCount();
+                mHits++;
+                return bitmap;
+            }
+            mMisses++;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Give a bitmap back to the pool. It must not be used by the caller anymore.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        final int size = bitmap.getByteCount();
+        synchronized (this) {
+            if (mBytes + size > mMaxBytes)
+                return;
+            final long key = key(bitmap.getWidth(), bitmap.getHeight());
+            ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<Bitmap>();
+                mBuckets.put(key, bucket);
+            }
+            bucket.push(bitmap);
+            mBytes += size;
+        }
+    }
+
+    /**
+     * Get the number of {@link #acquire} calls served from the pool.
+     */
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Get the number of {@link #acquire} calls that allocated a new bitmap.
+     */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Drop every pooled bitmap.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+        mBytes = 0;
+    }
+}
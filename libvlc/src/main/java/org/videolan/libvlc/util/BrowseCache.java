@@ -0,0 +1,114 @@
+/*****************************************************************************
+ * BrowseCache.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.net.Uri;
+
+import org.videolan.libvlc.Media;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Children of recently browsed folders, used by {@link MediaBrowser#setBrowseCache} to show a
+ * folder instantly while it is enumerated again.
+ *
+ * The cache holds a reference on every cached media. The least recently browsed folders are
+ * evicted, and their medias released, once the cache holds more than maxMedias medias in
+ * total, whatever the folders they belong to. One cache can be shared by several browsers.
+ */
+public class BrowseCache {
+    private final int mMaxMedias;
+    private final LinkedHashMap<String, Media[]> mFolders =
+            new LinkedHashMap<String, Media[]>(16, 0.75f, true);
+    private int mMediaCount = 0;
+
+    /**
+     * @param maxMedias maximum number of medias kept across all folders
+     */
+    public BrowseCache(int maxMedias) {
+        mMaxMedias = maxMedias;
+    }
+
+    static String key(Uri uri, int flags, String ignoreList) {
+        return uri.toString() + '\n' + flags + '\n' + ignoreList;
+    }
+
+    /**
+     * Get the cached children of a folder. Each returned media is retained and should be
+     * released by the caller.
+     *
+     * @return the children, or null if the folder isn't cached
+     */
+    synchronized Media[] get(String key) {
+        final Media[] medias = mFolders.get(key);
+        if (medias == null)
+            return null;
+        for (Media media : medias)
+            media.retain();
+        return medias.clone();
+    }
+
+    /**
+     * Replace the cached children of a folder. The cache takes its own reference on them.
+     */
+    synchronized void put(String key, List<Media> medias) {
+        remove(key);
+        if (medias.size() > mMaxMedias)
+            return;
+
+        final Media[] array = medias.toArray(new Media[medias.size()]);
+        for (Media media : array)
+            media.retain();
+        mFolders.put(key, array);
+        mMediaCount += array.length;
+
+        final Iterator<Map.Entry<String, Media[]>> it = mFolders.entrySet().iterator();
+        while (mMediaCount > mMaxMedias && it.hasNext()) {
+            final Media[] evicted = it.next().getValue();
+            it.remove();
+            release(evicted);
+        }
+    }
+
+    /**
+     * Release every cached media.
+     */
+    public synchronized void clear() {
+        for (Media[] medias : mFolders.values())
+            release(medias);
+        mFolders.clear();
+    }
+
+    private void remove(String key) {
+        final Media[] medias = mFolders.remove(key);
+        if (medias != null)
+            release(medias);
+    }
+
+    private void release(Media[] medias) {
+        mMediaCount -= medias.length;
+        for (Media media : medias)
+            media.release();
+    }
+}
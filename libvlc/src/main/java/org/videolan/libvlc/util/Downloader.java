@@ -0,0 +1,568 @@
+/*****************************************************************************
+ * Downloader.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.util.Log;
+
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.Media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download an http(s) Uri into a local file, with several concurrent range requests, and
+ * resume an interrupted download where it stopped.
+ *
+ * When the server supports range requests, the file is split into segments downloaded in
+ * parallel and written in place through a {@link FileChannel}. The progress of each segment
+ * is saved in a journal next to the file, so that a download cancelled or failed can be
+ * resumed by a new Downloader on the same path, as long as the remote file didn't change.
+ * Other servers are downloaded with a single request, from the start.
+ *
+ * Once finished, the file can be played with {@link #newMedia(LibVLC)}.
+ */
+public class Downloader {
+    private static final String TAG = "LibVLC/Downloader";
+    private static final int MAGIC = 0x564c4344;
+    private static final int VERSION = 1;
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int DEFAULT_SEGMENT_COUNT = 4;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TIMEOUT_MS = 15000;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+    private static final long JOURNAL_INTERVAL_MS = 2000;
+
+    public interface Listener {
+        /**
+         * Received once, when the download succeeded or failed. Not received after
+         * {@link #cancel()}.
+         */
+        void onFinish(boolean success);
+
+        /**
+         * Received periodically while downloading.
+         *
+         * @param downloadedBytes bytes written to the file, including resumed ones
+         * @param totalBytes size of the file, or -1 if unknown
+         * @param bytesPerSecond current throughput
+         */
+        void onProgress(long downloadedBytes, long totalBytes, long bytesPerSecond);
+    }
+
+    private final String mUrl;
+    private final File mFile;
+    private final File mJournalFile;
+    private final Listener mListener;
+    private final Executor mCallbackExecutor;
+    private final int mSegmentCount;
+    private final AtomicLong mDownloaded = new AtomicLong();
+    private final ArrayList<HttpURLConnection> mConnections = new ArrayList<HttpURLConnection>();
+    private volatile long mTotal = -1;
+    private volatile long mBytesPerSecond = 0;
+    private volatile boolean mCancelled = false;
+    private volatile boolean mSucceeded = false;
+    private volatile IOException mError = null;
+    private Thread mThread = null;
+    private FileInputStream mPlaybackStream = null;
+
+    /* on the download threads */
+    private boolean mRanges;
+    private String mValidator;
+    private FileChannel mChannel;
+
+    private static class Segment {
+        private final long mStart;
+        /* exclusive, -1 if unknown */
+        private final long mEnd;
+        private volatile long mDone;
+
+        private Segment(long start, long end, long done) {
+            mStart = start;
+            mEnd = end;
+            mDone = done;
+        }
+    }
+
+    /**
+     * Create a Downloader that will download an Uri into a local filesystem path, using
+     * several range requests at once if possible.
+     * @param uri the http(s) Uri to download
+     * @param filepath local filesystem path where to download the Uri
+     * @param listener listener notified on the main thread
+     */
+    @MainThread
+    public Downloader(Uri uri, String filepath, Listener listener) {
+        this(uri, filepath, DEFAULT_SEGMENT_COUNT, listener);
+    }
+
+    /**
+     * @param segmentCount maximum number of concurrent range requests
+     */
+    @MainThread
+    public Downloader(Uri uri, String filepath, int segmentCount, Listener listener) {
+        this(toUrl(uri), filepath, segmentCount, listener, newMainExecutor());
+    }
+
+    /**
+     * @param callbackExecutor executor the listener is notified on
+     */
+    Downloader(String url, String filepath, int segmentCount, Listener listener,
+               Executor callbackExecutor) {
+        if (filepath == null || listener == null || callbackExecutor == null)
+            throw new IllegalArgumentException("arguments shouldn't be null");
+        if (segmentCount <= 0)
+            throw new IllegalArgumentException("segmentCount should be > 0");
+        mUrl = url;
+        mFile = new File(filepath);
+        mJournalFile = new File(filepath + JOURNAL_SUFFIX);
+        mSegmentCount = segmentCount;
+        mListener = listener;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    private static String toUrl(Uri uri) {
+        if (uri == null)
+            throw new IllegalArgumentException("arguments shouldn't be null");
+        final String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme))
+            throw new IllegalArgumentException("only http(s) uris can be downloaded");
+        return uri.toString();
+    }
+
+    private static Executor newMainExecutor() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        };
+    }
+
+    /**
+     * Start or resume the download.
+     */
+    @MainThread
+    public void start() {
+        if (mThread != null)
+            throw new IllegalStateException("already started");
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runDownload();
+            }
+        }, "Downloader");
+        mThread.start();
+    }
+
+    /**
+     * Stop the download, keeping what was downloaded so far to resume later.
+     * Don't call this method if you already received the {@link Listener#onFinish(boolean)} callback.
+     */
+    @MainThread
+    public void cancel() {
+        mCancelled = true;
+        disconnectAll();
+    }
+
+    public long getDownloadedBytes() {
+        return mDownloaded.get();
+    }
+
+    /**
+     * @return the size of the file, or -1 if unknown yet
+     */
+    public long getTotalBytes() {
+        return mTotal;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * Create a Media playing the downloaded file through a file descriptor. The descriptor
+     * stays open until {@link #release()}.
+     * @throws IllegalStateException if the download didn't succeed
+     */
+    public synchronized Media newMedia(LibVLC libVLC) throws IOException {
+        if (!mSucceeded)
+            throw new IllegalStateException("download not finished");
+        if (mPlaybackStream == null)
+            mPlaybackStream = new FileInputStream(mFile);
+        return new Media(libVLC, mPlaybackStream.getFD());
+    }
+
+    /**
+     * Close the file descriptor opened by {@link #newMedia(LibVLC)}, once its medias are
+     * released.
+     */
+    public synchronized void release() {
+        close(mPlaybackStream);
+        mPlaybackStream = null;
+    }
+
+    private void runDownload() {
+        RandomAccessFile file = null;
+        Segment[] segments = null;
+        try {
+            file = new RandomAccessFile(mFile, "rw");
+            mChannel = file.getChannel();
+            segments = prepare(file);
+            download(segments);
+        } catch (IOException e) {
+            if (mError == null)
+                mError = e;
+        } finally {
+            if (segments != null && !mSucceeded && mRanges)
+                writeJournal(segments);
+            close(file);
+        }
+        if (mCancelled)
+            return;
+
+        if (mError != null)
+            Log.w(TAG, "can't download " + mUrl, mError);
+        else
+            mJournalFile.delete();
+        notifyProgress();
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onFinish(mSucceeded);
+            }
+        });
+    }
+
+    /**
+     * Probe the remote file and load the journal, or start over if it doesn't match.
+     */
+    private Segment[] prepare(RandomAccessFile file) throws IOException {
+        final HttpURLConnection connection = open();
+        if (connection == null)
+            throw new IOException("cancelled");
+        try {
+            connection.setRequestProperty("Range", "bytes=0-0");
+            final int code = connection.getResponseCode();
+            final String contentRange = connection.getHeaderField("Content-Range");
+            final int slash = contentRange != null ? contentRange.lastIndexOf('/') : -1;
+            if (code == HttpURLConnection.HTTP_PARTIAL && slash != -1
+                    && !contentRange.endsWith("*")) {
+                mRanges = true;
+                mTotal = Long.parseLong(contentRange.substring(slash + 1).trim());
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                mRanges = false;
+                mTotal = parseLong(connection.getHeaderField("Content-Length"), -1);
+            } else if (code == 416) {
+                /* empty file, or a server misinterpreting the probe */
+                mRanges = false;
+                mTotal = -1;
+            } else
+                throw new IOException("unexpected response " + code);
+            mValidator = connection.getHeaderField("ETag");
+            if (mValidator == null)
+                mValidator = connection.getHeaderField("Last-Modified");
+        } finally {
+            disconnect(connection);
+        }
+
+        if (mRanges) {
+            final Segment[] segments = readJournal();
+            if (segments != null && file.length() == mTotal)
+                return segments;
+        }
+
+        file.setLength(mRanges ? mTotal : 0);
+        if (!mRanges)
+            return new Segment[] { new Segment(0, mTotal, 0) };
+        final int count = (int) Math.max(1, Math.min(mSegmentCount, mTotal / MIN_SEGMENT_SIZE));
+        final Segment[] segments = new Segment[count];
+        for (int i = 0; i < count; ++i)
+            segments[i] = new Segment(mTotal * i / count, mTotal * (i + 1) / count, 0);
+        return segments;
+    }
+
+    private void download(final Segment[] segments) throws IOException {
+        long downloaded = 0;
+        for (Segment segment : segments)
+            downloaded += segment.mDone;
+        mDownloaded.set(downloaded);
+
+        final CountDownLatch latch = new CountDownLatch(segments.length);
+        for (int i = 0; i < segments.length; ++i) {
+            final Segment segment = segments[i];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        downloadSegment(segment);
+                    } catch (IOException e) {
+                        if (mError == null)
+                            mError = e;
+                        /* stop the other segments, what they got is kept in the journal */
+                        disconnectAll();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }, "Downloader-" + i).start();
+        }
+
+        long lastNs = System.nanoTime();
+        long lastBytes = downloaded;
+        long lastJournalNs = lastNs;
+        try {
+            while (!latch.await(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                final long nowNs = System.nanoTime();
+                final long bytes = mDownloaded.get();
+                final long instant = (bytes - lastBytes) * 1000000000L / Math.max(1, nowNs - lastNs);
+                mBytesPerSecond = mBytesPerSecond == 0 ? instant
+                        : (mBytesPerSecond * 7 + instant * 3) / 10;
+                lastNs = nowNs;
+                lastBytes = bytes;
+                notifyProgress();
+
+                if (mRanges && nowNs - lastJournalNs >= JOURNAL_INTERVAL_MS * 1000000L) {
+                    writeJournal(segments);
+                    lastJournalNs = nowNs;
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            throw new IOException("interrupted");
+        }
+
+        if (mError != null)
+            throw mError;
+        if (mCancelled)
+            return;
+        mChannel.force(false);
+        mSucceeded = true;
+    }
+
+    private void downloadSegment(Segment segment) throws IOException {
+        long position = segment.mStart + segment.mDone;
+        if (segment.mEnd != -1 && position >= segment.mEnd)
+            return;
+
+        final HttpURLConnection connection = open();
+        if (connection == null)
+            return;
+        ReadableByteChannel in = null;
+        try {
+            if (mRanges) {
+                connection.setRequestProperty("Range",
+                        "bytes=" + position + "-" + (segment.mEnd - 1));
+                if (mValidator != null)
+                    connection.setRequestProperty("If-Range", mValidator);
+            }
+            final int code = connection.getResponseCode();
+            if (code != (mRanges ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK))
+                throw new IOException("unexpected response " + code);
+
+            in = Channels.newChannel(connection.getInputStream());
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (!mCancelled) {
+                buffer.clear();
+                if (segment.mEnd != -1)
+                    buffer.limit((int) Math.min(BUFFER_SIZE, segment.mEnd - position));
+                if (!buffer.hasRemaining())
+                    break;
+                final int read = in.read(buffer);
+                if (read == -1)
+                    break;
+                buffer.flip();
+                while (buffer.hasRemaining())
+                    position += mChannel.write(buffer, position);
+                segment.mDone += read;
+                mDownloaded.addAndGet(read);
+            }
+        } catch (IOException e) {
+            if (!mCancelled)
+                throw e;
+        } finally {
+            close(in);
+            disconnect(connection);
+        }
+        if (!mCancelled && segment.mEnd != -1 && position < segment.mEnd)
+            throw new IOException("connection closed at " + position);
+    }
+
+    /**
+     * @return a new connection, or null if cancelled
+     */
+    private HttpURLConnection open() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(mUrl).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        /* ranges would be meaningless on a transparently decompressed body */
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        synchronized (mConnections) {
+            if (mCancelled)
+                return null;
+            mConnections.add(connection);
+        }
+        return connection;
+    }
+
+    private void disconnect(HttpURLConnection connection) {
+        synchronized (mConnections) {
+            mConnections.remove(connection);
+        }
+        connection.disconnect();
+    }
+
+    private void disconnectAll() {
+        final ArrayList<HttpURLConnection> connections;
+        synchronized (mConnections) {
+            connections = new ArrayList<HttpURLConnection>(mConnections);
+            mConnections.clear();
+        }
+        for (HttpURLConnection connection : connections)
+            connection.disconnect();
+    }
+
+    private void notifyProgress() {
+        final long downloaded = mDownloaded.get();
+        final long total = mTotal;
+        final long bytesPerSecond = mBytesPerSecond;
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled)
+                    mListener.onProgress(downloaded, total, bytesPerSecond);
+            }
+        });
+    }
+
+    private Segment[] readJournal() {
+        if (!mJournalFile.exists())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            final String url = in.readUTF();
+            final String validator = in.readBoolean() ? in.readUTF() : null;
+            final long total = in.readLong();
+            if (!url.equals(mUrl) || total != mTotal
+                    || (validator == null ? mValidator != null : !validator.equals(mValidator)))
+                return null;
+            final int count = in.readInt();
+            final Segment[] segments = new Segment[count];
+            for (int i = 0; i < count; ++i) {
+                final long start = in.readLong();
+                final long end = in.readLong();
+                final long done = in.readLong();
+                if (start < 0 || end > total || done < 0 || start + done > end)
+                    return null;
+                segments[i] = new Segment(start, end, done);
+            }
+            return segments;
+        } catch (IOException e) {
+            Log.w(TAG, "can't read " + mJournalFile, e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    private void writeJournal(Segment[] segments) {
+        /* only save what is on the disk */
+        final long[] done = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i)
+            done[i] = segments[i].mDone;
+
+        final File tmp = new File(mJournalFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            mChannel.force(false);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mUrl);
+            out.writeBoolean(mValidator != null);
+            if (mValidator != null)
+                out.writeUTF(mValidator);
+            out.writeLong(mTotal);
+            out.writeInt(segments.length);
+            for (int i = 0; i < segments.length; ++i) {
+                out.writeLong(segments[i].mStart);
+                out.writeLong(segments[i].mEnd);
+                out.writeLong(done[i]);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mJournalFile))
+                throw new IOException("can't rename " + tmp);
+        } catch (IOException e) {
+            Log.w(TAG, "can't write " + mJournalFile, e);
+        } finally {
+            close(out);
+            tmp.delete();
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -29,6 +29,11 @@ import org.videolan.libvlc.MediaPlayer;
 
 import java.util.ArrayList;
 
+/**
+ * @deprecated use {@link Downloader}, which doesn't need a LibVLC instance, can resume and
+ * reports progress in bytes.
+ */
+@Deprecated
 public class Dumper {
     public interface Listener {
         void onFinish(boolean success);
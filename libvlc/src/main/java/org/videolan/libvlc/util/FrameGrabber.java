@@ -0,0 +1,475 @@
+/*****************************************************************************
+ * FrameGrabber.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.WorkerThread;
+
+import org.videolan.libvlc.IVLCVout;
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.MediaPlayer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Grab video frames of a media into bitmaps, scaled to fit them and centered between
+ * transparent borders, as the libvlc thumbnailer does.
+ *
+ * The media is opened once and played without audio into a SurfaceTexture. Each grab seeks to
+ * a time, plays until the next frame is rendered, pauses, and reads that frame back with
+ * OpenGL ES into a direct buffer reused from one frame to the next. Unlike
+ * {@link VLCUtil#getThumbnail(Media, int, int)}, no array is allocated per frame, and grabbing
+ * several frames of a media opens and probes it only once.
+ *
+ * A grabber is bound to the thread that created it, which holds its OpenGL context: every
+ * method must be called from that thread, which must not be the main thread since methods
+ * block until libvlc renders a frame. Rendered frames are signaled on a thread of the grabber,
+ * so grabbing doesn't depend on the main thread being idle.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+public class FrameGrabber {
+    private static final long OPEN_TIMEOUT_MS = 10000;
+    private static final long GRAB_TIMEOUT_MS = 5000;
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uTexMatrix;\n" +
+            "attribute vec4 aPosition;\n" +
+            "attribute vec4 aTexCoord;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "void main() {\n" +
+            "    gl_Position = aPosition;\n" +
+            "    vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+            "}\n";
+    private static final String FRAGMENT_SHADER =
+            "#extension GL_OES_EGL_image_external : require\n" +
+            "precision mediump float;\n" +
+            "varying vec2 vTexCoord;\n" +
+            "uniform samplerExternalOES sTexture;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vec4(texture2D(sTexture, vTexCoord).rgb, 1.0);\n" +
+            "}\n";
+    /* x, y, s, t of a strip covering the viewport: the frame is drawn upside down since
+     * glReadPixels returns the bottom row first, and bitmaps start with the top row */
+    private static final float[] QUAD = {
+            -1f, -1f, 0f, 1f,
+            1f, -1f, 1f, 1f,
+            -1f, 1f, 0f, 0f,
+            1f, 1f, 1f, 0f,
+    };
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final MediaPlayer mMediaPlayer;
+    private final HandlerThread mCallbackThread;
+    private final EGLDisplay mDisplay;
+    private final EGLConfig mConfig;
+    private final EGLContext mContext;
+    private EGLSurface mSurface = EGL14.EGL_NO_SURFACE;
+    private int mSurfaceWidth = 0;
+    private int mSurfaceHeight = 0;
+    private final int mTexture;
+    private final int mProgram;
+    private final int mTexMatrixLocation;
+    private final int mPositionLocation;
+    private final int mTexCoordLocation;
+    private final SurfaceTexture mSurfaceTexture;
+    private final FloatBuffer mQuad;
+    private final float[] mTexMatrix = new float[16];
+    private ByteBuffer mPixels = null;
+    private long mLength = 0;
+    /* display size of the video, 0 if unknown */
+    private int mVideoWidth = 0;
+    private int mVideoHeight = 0;
+    private long mFrameTime = -1;
+    private boolean mOpened = false;
+
+    /* frames rendered by libvlc and playback state, guarded by mLock */
+    private final Object mLock = new Object();
+    private int mRenderedFrames = 0;
+    private int mLatchedFrames = 0;
+    private boolean mFailed = false;
+
+    private final MediaPlayer.EventListener mMediaPlayerListener = new MediaPlayer.EventListener() {
+        @Override
+        public void onEvent(MediaPlayer.Event event) {
+            synchronized (mLock) {
+                mFailed = true;
+                mLock.notifyAll();
+            }
+        }
+    };
+
+    /**
+     * @throws IllegalStateException if no OpenGL ES 2 context can be created
+     */
+    @WorkerThread
+    public FrameGrabber(LibVLC libVLC) {
+        mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        final int[] version = new int[2];
+        if (!EGL14.eglInitialize(mDisplay, version, 0, version, 1))
+            throw new IllegalStateException("eglInitialize failed");
+        final int[] configAttribs = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_NONE
+        };
+        final EGLConfig[] configs = new EGLConfig[1];
+        final int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(mDisplay, configAttribs, 0, configs, 0, 1, configCount, 0)
+                || configCount[0] == 0) {
+            EGL14.eglTerminate(mDisplay);
+            throw new IllegalStateException("no RGBA pbuffer config");
+        }
+        mConfig = configs[0];
+        mContext = EGL14.eglCreateContext(mDisplay, mConfig, EGL14.EGL_NO_CONTEXT,
+                new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+        if (mContext == EGL14.EGL_NO_CONTEXT) {
+            EGL14.eglTerminate(mDisplay);
+            throw new IllegalStateException("eglCreateContext failed");
+        }
+        makeCurrent(1, 1);
+
+        final int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        mTexture = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTexture);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+        mProgram = createProgram();
+        mTexMatrixLocation = GLES20.glGetUniformLocation(mProgram, "uTexMatrix");
+        mPositionLocation = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        mTexCoordLocation = GLES20.glGetAttribLocation(mProgram, "aTexCoord");
+        mQuad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        mQuad.put(QUAD).position(0);
+
+        /* a SurfaceTexture signals its frames on the looper of the thread creating it, or on
+         * the main looper if that thread has none */
+        mCallbackThread = new HandlerThread("FrameGrabber");
+        mCallbackThread.start();
+        mSurfaceTexture = createSurfaceTexture(new Handler(mCallbackThread.getLooper()));
+
+        mMediaPlayer = new MediaPlayer(libVLC);
+        mMediaPlayer.addEventListener(mMediaPlayerListener, DIRECT_EXECUTOR,
+                MediaPlayer.Event.mask(MediaPlayer.Event.EncounteredError,
+                        MediaPlayer.Event.EndReached));
+    }
+
+    /**
+     * Open a media and wait for its first frame. The previous media, if any, is closed.
+     *
+     * @return false if the media has no video or can't be played
+     */
+    @WorkerThread
+    public boolean open(Media media) {
+        close();
+        media.addOption(":no-audio");
+        media.addOption(":no-spu");
+        media.addOption(":no-osd");
+        mMediaPlayer.setMedia(media);
+        final IVLCVout vout = mMediaPlayer.getVLCVout();
+        vout.setVideoSurface(mSurfaceTexture);
+        vout.attachViews();
+        mOpened = true;
+
+        if (!playNextFrame(OPEN_TIMEOUT_MS)) {
+            close();
+            return false;
+        }
+        mLength = mMediaPlayer.getLength();
+        final Media.VideoTrack track = (Media.VideoTrack) media.getTrack(Media.Track.Type.Video, 0);
+        if (track != null && track.width > 0 && track.height > 0) {
+            mVideoWidth = track.sarNum > 0 && track.sarDen > 0
+                    ? (int) ((long) track.width * track.sarNum / track.sarDen) : track.width;
+            mVideoHeight = track.height;
+        }
+        return true;
+    }
+
+    /**
+     * Get the length of the opened media, or 0 if it is unknown.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * Get the time of the last grabbed frame, as reported by the player once the frame was
+     * rendered: it can be a few frames ahead of the frame itself.
+     */
+    public long getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * Grab the frame at a time of the opened media into a bitmap, scaled to fit it.
+     *
+     * @param timeMs time of the frame, or -1 for the frame shown after opening or after the
+     *               previous grab
+     * @param bitmap a mutable ARGB_8888 bitmap
+     * @return true if the bitmap was filled
+     */
+    @WorkerThread
+    public boolean grab(long timeMs, Bitmap bitmap) {
+        if (!mOpened)
+            return false;
+        if (timeMs >= 0) {
+            mMediaPlayer.setTime(mLength > 0 ? Math.min(timeMs, mLength - 1) : timeMs);
+            if (!playNextFrame(GRAB_TIMEOUT_MS))
+                return false;
+        }
+        mFrameTime = mMediaPlayer.getTime();
+        readFrame(bitmap);
+        return true;
+    }
+
+    /**
+     * Stop playing the opened media.
+     */
+    @WorkerThread
+    public void close() {
+        if (!mOpened)
+            return;
+        mOpened = false;
+        mMediaPlayer.stop();
+        mMediaPlayer.getVLCVout().detachViews();
+        mMediaPlayer.setMedia(null);
+        mLength = 0;
+        mVideoWidth = 0;
+        mVideoHeight = 0;
+        mFrameTime = -1;
+        synchronized (mLock) {
+            mFailed = false;
+        }
+    }
+
+    /**
+     * Release the player and the OpenGL context.
+     */
+    @WorkerThread
+    public void release() {
+        close();
+        mMediaPlayer.release();
+        mSurfaceTexture.release();
+        GLES20.glDeleteProgram(mProgram);
+        GLES20.glDeleteTextures(1, new int[]{mTexture}, 0);
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+                EGL14.EGL_NO_CONTEXT);
+        if (mSurface != EGL14.EGL_NO_SURFACE)
+            EGL14.eglDestroySurface(mDisplay, mSurface);
+        EGL14.eglDestroyContext(mDisplay, mContext);
+        EGL14.eglTerminate(mDisplay);
+        mCallbackThread.quit();
+    }
+
+    private SurfaceTexture createSurfaceTexture(Handler handler) {
+        final FutureTask<SurfaceTexture> task = new FutureTask<SurfaceTexture>(
+                new Callable<SurfaceTexture>() {
+            @Override
+            public SurfaceTexture call() {
+                final SurfaceTexture surfaceTexture = new SurfaceTexture(mTexture);
+                surfaceTexture.setOnFrameAvailableListener(
+                        new SurfaceTexture.OnFrameAvailableListener() {
+                    @Override
+                    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+                        synchronized (mLock) {
+                            mRenderedFrames++;
+                            mLock.notifyAll();
+                        }
+                    }
+                });
+                return surfaceTexture;
+            }
+        });
+        handler.post(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mCallbackThread.quit();
+            throw new IllegalStateException("interrupted");
+        } catch (ExecutionException e) {
+            mCallbackThread.quit();
+            throw new IllegalStateException("can't create a SurfaceTexture", e.getCause());
+        }
+    }
+
+    /* play until a frame newer than the ones already latched is rendered, then pause */
+    private boolean playNextFrame(long timeoutMs) {
+        int latched;
+        synchronized (mLock) {
+            /* a frame rendered while pausing after the previous grab predates the seek */
+            latched = mRenderedFrames;
+            mFailed = false;
+        }
+        if (latched > mLatchedFrames) {
+            mSurfaceTexture.updateTexImage();
+            mLatchedFrames = latched;
+        }
+
+        mMediaPlayer.play();
+        boolean rendered;
+        synchronized (mLock) {
+            final long deadline = System.currentTimeMillis() + timeoutMs;
+            long waitMs = timeoutMs;
+            while (mRenderedFrames == latched && !mFailed && waitMs > 0) {
+                try {
+                    mLock.wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                waitMs = deadline - System.currentTimeMillis();
+            }
+            rendered = mRenderedFrames > latched;
+            latched = mRenderedFrames;
+        }
+        mMediaPlayer.pause();
+        if (!rendered)
+            return false;
+        mSurfaceTexture.updateTexImage();
+        mLatchedFrames = latched;
+        return true;
+    }
+
+    private void readFrame(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        makeCurrent(width, height);
+        mSurfaceTexture.getTransformMatrix(mTexMatrix);
+
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClearColor(0f, 0f, 0f, 0f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        setFitViewport(width, height);
+        GLES20.glUseProgram(mProgram);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mTexture);
+        GLES20.glUniformMatrix4fv(mTexMatrixLocation, 1, false, mTexMatrix, 0);
+        mQuad.position(0);
+        GLES20.glVertexAttribPointer(mPositionLocation, 2, GLES20.GL_FLOAT, false, 16, mQuad);
+        GLES20.glEnableVertexAttribArray(mPositionLocation);
+        mQuad.position(2);
+        GLES20.glVertexAttribPointer(mTexCoordLocation, 2, GLES20.GL_FLOAT, false, 16, mQuad);
+        GLES20.glEnableVertexAttribArray(mTexCoordLocation);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        final int size = width * height * 4;
+        if (mPixels == null || mPixels.capacity() < size)
+            mPixels = ByteBuffer.allocateDirect(size);
+        mPixels.clear();
+        mPixels.limit(size);
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                mPixels);
+        mPixels.rewind();
+        bitmap.copyPixelsFromBuffer(mPixels);
+    }
+
+    /* the largest area of the bitmap with the aspect ratio of the video, centered */
+    private void setFitViewport(int width, int height) {
+        if (mVideoWidth == 0 || mVideoHeight == 0) {
+            GLES20.glViewport(0, 0, width, height);
+            return;
+        }
+        int fitWidth = width;
+        int fitHeight = (int) ((long) width * mVideoHeight / mVideoWidth);
+        if (fitHeight > height) {
+            fitHeight = height;
+            fitWidth = (int) ((long) height * mVideoWidth / mVideoHeight);
+        }
+        GLES20.glViewport((width - fitWidth) / 2, (height - fitHeight) / 2, fitWidth, fitHeight);
+    }
+
+    /* (re)create the pbuffer to the size of the bitmaps to fill */
+    private void makeCurrent(int width, int height) {
+        if (width == mSurfaceWidth && height == mSurfaceHeight)
+            return;
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+                EGL14.EGL_NO_CONTEXT);
+        if (mSurface != EGL14.EGL_NO_SURFACE)
+            EGL14.eglDestroySurface(mDisplay, mSurface);
+        mSurface = EGL14.eglCreatePbufferSurface(mDisplay, mConfig,
+                new int[]{EGL14.EGL_WIDTH, width, EGL14.EGL_HEIGHT, height, EGL14.EGL_NONE}, 0);
+        if (mSurface == EGL14.EGL_NO_SURFACE
+                || !EGL14.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext))
+            throw new IllegalStateException("can't create a " + width + "x" + height + " pbuffer");
+        mSurfaceWidth = width;
+        mSurfaceHeight = height;
+    }
+
+    private static int createProgram() {
+        final int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER));
+        GLES20.glAttachShader(program, compileShader(GLES20.GL_FRAGMENT_SHADER,
+                FRAGMENT_SHADER));
+        GLES20.glLinkProgram(program);
+        final int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE)
+            throw new IllegalStateException("can't link: " + GLES20.glGetProgramInfoLog(program));
+        return program;
+    }
+
+    private static int compileShader(int type, String source) {
+        final int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        final int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE)
+            throw new IllegalStateException("can't compile: " + GLES20.glGetShaderInfoLog(shader));
+        return shader;
+    }
+}
@@ -25,6 +25,7 @@ import android.support.annotation.MainThread;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 import org.videolan.libvlc.LibVLC;
 import org.videolan.libvlc.Media;
@@ -36,12 +37,21 @@ public class MediaBrowser {
 
     private final LibVLC mLibVlc;
     private final ArrayList<MediaDiscoverer> mMediaDiscoverers = new ArrayList<MediaDiscoverer>();
-    private final ArrayList<Media> mDiscovererMediaArray = new ArrayList<Media>();
+    private final MediaIndex mDiscovererMediaIndex = new MediaIndex(true);
     private MediaList mBrowserMediaList;
     private Media mMedia;
     private EventListener mEventListener;
+    private PagedBrowseListener mPagedListener;
     private boolean mAlive;
 
+    /* When a browse cache is set, the browsed medias are kept in mBrowsedMedias (each one
+     * retained), starting with the cached ones, and mStaleMedias holds the cached medias not
+     * found again yet, by Uri. */
+    private BrowseCache mBrowseCache;
+    private String mBrowseKey;
+    private MediaIndex mBrowsedMedias;
+    private final LinkedHashMap<String, Media> mStaleMedias = new LinkedHashMap<String, Media>();
+
     private static final String IGNORE_LIST_OPTION =  ":ignore-filetypes=";
     private String mIgnoreList = "db,nfo,ini,jpg,jpeg,ljpg,gif,png,pgm,pgmyuv,pbm,pam,tga,bmp,pnm,xpm,xcf,pcx,tif,tiff,lbm,sfv,txt,sub,idx,srt,cue,ssa";
 
@@ -84,10 +94,12 @@ public class MediaBrowser {
     }
 
     private void reset() {
+        if (mPagedListener != null)
+            mPagedListener.detach();
         for (MediaDiscoverer md : mMediaDiscoverers)
             md.release();
         mMediaDiscoverers.clear();
-        mDiscovererMediaArray.clear();
+        mDiscovererMediaIndex.clear();
         if (mMedia != null) {
             mMedia.release();
             mMedia = null;
@@ -97,6 +109,14 @@ public class MediaBrowser {
             mBrowserMediaList.release();
             mBrowserMediaList = null;
         }
+
+        if (mBrowsedMedias != null) {
+            for (Media media : mBrowsedMedias.toList())
+                media.release();
+            mBrowsedMedias = null;
+        }
+        mStaleMedias.clear();
+        mBrowseKey = null;
     }
 
     /**
@@ -121,6 +141,30 @@ public class MediaBrowser {
         mEventListener = eventListener;
     }
 
+    /**
+     * Deliver the medias found by {@link #browse} by pages instead of one by one to the
+     * EventListener, which still receives the medias of network discoveries. The browse
+     * cache is not used for paged browses.
+     *
+     * @param listener listener to use, or null to deliver medias to the EventListener again
+     */
+    @MainThread
+    public void setPagedBrowseListener(PagedBrowseListener listener) {
+        reset();
+        mPagedListener = listener;
+    }
+
+    /**
+     * Set a cache of browsed folders. When browsing a cached folder, its cached medias are
+     * added right away, then only the differences found by browsing it again are notified.
+     *
+     * @param cache cache to use, or null to disable caching
+     */
+    @MainThread
+    public void setBrowseCache(BrowseCache cache) {
+        mBrowseCache = cache;
+    }
+
     private void startMediaDiscoverer(String discovererName) {
         MediaDiscoverer md = new MediaDiscoverer(mLibVlc, discovererName);
         mMediaDiscoverers.add(md);
@@ -203,17 +247,42 @@ public class MediaBrowser {
             mediaFlags |= Media.Parse.DoInteract;
         reset();
         mBrowserMediaList = media.subItems();
-        mBrowserMediaList.setEventListener(mBrowserMediaListEventListener);
+        if (mPagedListener != null) {
+            mPagedListener.attach(mBrowserMediaList);
+        } else {
+            if (mBrowseCache != null)
+                startCachedBrowse(media, flags);
+            mBrowserMediaList.setEventListener(mBrowserMediaListEventListener);
+        }
         media.parseAsync(mediaFlags, 0);
         mMedia = media;
     }
 
+    private void startCachedBrowse(Media media, int flags) {
+        mBrowseKey = BrowseCache.key(media.getUri(), flags, mIgnoreList);
+        mBrowsedMedias = new MediaIndex(false);
+        final Media[] cached = mBrowseCache.get(mBrowseKey);
+        if (cached == null)
+            return;
+
+        for (Media child : cached) {
+            mBrowsedMedias.add(child);
+            mStaleMedias.put(child.getUri().toString(), child);
+        }
+        if (mEventListener != null) {
+            for (int i = 0; i < cached.length; ++i)
+                mEventListener.onMediaAdded(i, cached[i]);
+        }
+    }
+
     /**
      * Get the number or media.
      */
     @MainThread
     public int getMediaCount() {
-        return mBrowserMediaList != null ? mBrowserMediaList.getCount() : mDiscovererMediaArray.size();
+        if (mBrowsedMedias != null)
+            return mBrowsedMedias.size();
+        return mBrowserMediaList != null ? mBrowserMediaList.getCount() : mDiscovererMediaIndex.size();
     }
 
     /**
@@ -223,8 +292,13 @@ public class MediaBrowser {
     public Media getMediaAt(int index) {
         if (index < 0 || index >= getMediaCount())
             throw new IndexOutOfBoundsException();
+        if (mBrowsedMedias != null) {
+            final Media media = mBrowsedMedias.get(index);
+            media.retain();
+            return media;
+        }
         final Media media = mBrowserMediaList != null ? mBrowserMediaList.getMediaAt(index) :
-                mDiscovererMediaArray.get(index);
+                mDiscovererMediaIndex.get(index);
         media.retain();
         return media;
     }
@@ -243,6 +317,10 @@ public class MediaBrowser {
     private final MediaList.EventListener mBrowserMediaListEventListener = new MediaList.EventListener() {
         @Override
         public void onEvent(MediaList.Event event) {
+            if (mBrowsedMedias != null) {
+                onCachedBrowseEvent(event);
+                return;
+            }
             if (mEventListener == null)
                 return;
             final MediaList.Event mlEvent = event;
@@ -260,6 +338,51 @@ public class MediaBrowser {
         }
     };
 
+    /**
+     * Merge the result of a new browse into the medias shown from the cache: only new and
+     * vanished medias are notified, and the new listing replaces the cached one at the end.
+     */
+    private void onCachedBrowseEvent(MediaList.Event event) {
+        int index;
+        switch (event.type) {
+        case MediaList.Event.ItemAdded:
+            if (mStaleMedias.remove(event.media.getUri().toString()) != null)
+                break;
+            index = mBrowsedMedias.add(event.media);
+            if (index == -1)
+                break;
+            event.media.retain();
+            if (mEventListener != null)
+                mEventListener.onMediaAdded(index, event.media);
+            break;
+        case MediaList.Event.ItemDeleted:
+            index = mBrowsedMedias.indexOf(event.media);
+            if (index == -1)
+                break;
+            mStaleMedias.remove(event.media.getUri().toString());
+            final Media removed = mBrowsedMedias.get(index);
+            mBrowsedMedias.remove(removed);
+            if (mEventListener != null)
+                mEventListener.onMediaRemoved(index, removed);
+            removed.release();
+            break;
+        case MediaList.Event.EndReached:
+            /* each removal is O(log n), see MediaIndex */
+            for (Media stale : mStaleMedias.values()) {
+                index = mBrowsedMedias.remove(stale);
+                if (mEventListener != null)
+                    mEventListener.onMediaRemoved(index, stale);
+                stale.release();
+            }
+            mStaleMedias.clear();
+            if (mBrowseCache != null)
+                mBrowseCache.put(mBrowseKey, mBrowsedMedias.toList());
+            if (mEventListener != null)
+                mEventListener.onBrowseEnd();
+            break;
+        }
+    }
+
     private final MediaList.EventListener mDiscovererMediaListEventListener = new MediaList.EventListener() {
         @Override
         public void onEvent(MediaList.Event event) {
@@ -274,23 +397,12 @@ public class MediaBrowser {
             switch (mlEvent.type) {
             case MediaList.Event.ItemAdded:
                 /* one item can be found by severals discoverers */
-                boolean found = false;
-                for (Media media : mDiscovererMediaArray) {
-                    if (media.getUri().toString().equalsIgnoreCase(mlEvent.media.getUri().toString())) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    mDiscovererMediaArray.add(mlEvent.media);
-                    index = mDiscovererMediaArray.size() - 1;
-                }if (index != -1)
+                index = mDiscovererMediaIndex.add(mlEvent.media);
+                if (index != -1)
                     mEventListener.onMediaAdded(index, mlEvent.media);
                 break;
             case MediaList.Event.ItemDeleted:
-                index = mDiscovererMediaArray.indexOf(mlEvent.media);
-                if (index != -1)
-                    mDiscovererMediaArray.remove(index);
+                index = mDiscovererMediaIndex.remove(mlEvent.media);
                 if (index != -1)
                     mEventListener.onMediaRemoved(index, mlEvent.media);
                 break;
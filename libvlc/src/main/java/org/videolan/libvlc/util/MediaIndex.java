@@ -0,0 +1,202 @@
+/*****************************************************************************
+ * MediaIndex.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import org.videolan.libvlc.Media;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Medias without duplicate Uris, in the order they were added: the medias found by several
+ * discoverers, or the children of a browsed folder.
+ *
+ * Medias are looked up by Uri in a hash map. Removed medias leave a
+ * tombstone in their slot, and a Fenwick tree over the live slots converts between slots
+ * and the dense indexes reported to the browser listener, so that adding, removing and
+ * indexing are O(log n). Slots are compacted once tombstones outnumber medias.
+ */
+final class MediaIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean mIgnoreCase;
+    private final HashMap<String, Integer> mSlotByUri = new HashMap<String, Integer>();
+    private Media[] mSlots = new Media[INITIAL_CAPACITY];
+    private String[] mKeys = new String[INITIAL_CAPACITY];
+    /* Fenwick tree of the live slots, 1-based */
+    private int[] mTree = new int[INITIAL_CAPACITY + 1];
+    private int mSlotCount = 0;
+    private int mSize = 0;
+
+    /**
+     * @param ignoreCase whether Uris differing only by case are the same media
+     */
+    MediaIndex(boolean ignoreCase) {
+        mIgnoreCase = ignoreCase;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    Media get(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException();
+        return mSlots[findSlot(index + 1)];
+    }
+
+    /**
+     * Get the index of the media with the same Uri as a media.
+     *
+     * @return index of that media, or -1 if there is none
+     */
+    int indexOf(Media media) {
+        final Integer slot = mSlotByUri.get(key(media));
+        return slot != null ? prefixCount(slot) - 1 : -1;
+    }
+
+    /**
+     * Get the medias, in order.
+     */
+    ArrayList<Media> toList() {
+        final ArrayList<Media> medias = new ArrayList<Media>(mSize);
+        for (int i = 0; i < mSlotCount; ++i) {
+            if (mSlots[i] != null)
+                medias.add(mSlots[i]);
+        }
+        return medias;
+    }
+
+    /**
+     * Add a media, unless a media with the same Uri is already there.
+     *
+     * @return index of the added media, or -1 if it is a duplicate
+     */
+    int add(Media media) {
+        final String key = key(media);
+        if (mSlotByUri.containsKey(key))
+            return -1;
+
+        if (mSlotCount == mSlots.length)
+            grow();
+        final int slot = mSlotCount++;
+        mSlots[slot] = media;
+        mKeys[slot] = key;
+        mSlotByUri.put(key, slot);
+        update(slot, 1);
+        return mSize++;
+    }
+
+    /**
+     * Remove a media previously added.
+     *
+     * @return index the media had, or -1 if it wasn't added (a duplicate for instance)
+     */
+    int remove(Media media) {
+        final String key = key(media);
+        final Integer slot = mSlotByUri.get(key);
+        if (slot == null || mSlots[slot] != media)
+            return -1;
+
+        final int index = prefixCount(slot) - 1;
+        mSlotByUri.remove(key);
+        mSlots[slot] = null;
+        mKeys[slot] = null;
+        update(slot, -1);
+        mSize--;
+        if (mSlotCount - mSize > Math.max(mSize, INITIAL_CAPACITY))
+            compact(mSlots.length);
+        return index;
+    }
+
+    void clear() {
+        mSlotByUri.clear();
+        mSlots = new Media[INITIAL_CAPACITY];
+        mKeys = new String[INITIAL_CAPACITY];
+        mTree = new int[INITIAL_CAPACITY + 1];
+        mSlotCount = 0;
+        mSize = 0;
+    }
+
+    private String key(Media media) {
+        final String uri = media.getUri().toString();
+        return mIgnoreCase ? uri.toLowerCase(Locale.US) : uri;
+    }
+
+    private void grow() {
+        /* compacting is enough if at least a quarter of the slots are tombstones */
+        compact(mSize * 4 > mSlots.length * 3 ? mSlots.length * 2 : mSlots.length);
+    }
+
+    private void compact(int capacity) {
+        final Media[] slots = new Media[capacity];
+        final String[] keys = new String[capacity];
+        int count = 0;
+        for (int i = 0; i < mSlotCount; ++i) {
+            if (mSlots[i] == null)
+                continue;
+            slots[count] = mSlots[i];
+            keys[count] = mKeys[i];
+            mSlotByUri.put(keys[count], count);
+            ++count;
+        }
+        mSlots = slots;
+        mKeys = keys;
+        mSlotCount = count;
+
+        /* every live slot is now before mSlotCount: build the tree in O(n) */
+        mTree = new int[capacity + 1];
+        for (int i = 1; i <= capacity; ++i) {
+            if (i <= count)
+                mTree[i] += 1;
+            final int parent = i + (i & -i);
+            if (parent <= capacity)
+                mTree[parent] += mTree[i];
+        }
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < mTree.length; i += i & -i)
+            mTree[i] += delta;
+    }
+
+    /* number of live slots up to slot, included */
+    private int prefixCount(int slot) {
+        int count = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i)
+            count += mTree[i];
+        return count;
+    }
+
+    /* slot of the rank-th live slot, rank starting at 1 */
+    private int findSlot(int rank) {
+        int pos = 0;
+        for (int step = Integer.highestOneBit(mTree.length - 1); step > 0; step >>= 1) {
+            final int next = pos + step;
+            if (next < mTree.length && mTree[next] < rank) {
+                pos = next;
+                rank -= mTree[next];
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,352 @@
+/*****************************************************************************
+ * MediaParser.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.MediaMetaCache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parse many medias with {@link Media#parseAsync(int, int)}, a bounded number at a time.
+ *
+ * Only maxConcurrency medias are handed to the libvlc preparser at once, the next one being
+ * started when one completes, so that a large collection neither floods the preparser queue
+ * nor keeps thousands of native medias alive. Medias found in an optional
+ * {@link MediaMetaCache} are not parsed at all, and parsed ones are added to it.
+ *
+ * Bookkeeping runs on a single private thread; results are delivered on the thread of the
+ * Handler given to {@link #parse(Collection, Listener, Handler)}.
+ */
+public class MediaParser {
+    private static final long PARSE_EVENTS = Media.Event.mask(Media.Event.ParsedChanged);
+
+    private final JobFactory mJobFactory;
+    private final MediaMetaCache mCache;
+    private final int mMaxConcurrency;
+    private final ExecutorService mExecutor;
+
+    public interface Listener {
+        /**
+         * Received when a media is parsed, or failed to be.
+         *
+         * @param status see {@link Media.ParsedStatus}
+         * @param entry the parsing result, or null if status isn't {@link Media.ParsedStatus#Done}
+         */
+        void onMediaParsed(Uri uri, int status, @Nullable MediaMetaCache.Entry entry);
+
+        /**
+         * Received after each {@link #onMediaParsed}.
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * Received once, when all medias are parsed or the task is cancelled.
+         */
+        void onFinished(boolean cancelled);
+    }
+
+    /**
+     * Parse of a single media, created and driven on the parser thread.
+     */
+    interface Job {
+        /**
+         * Start parsing.
+         *
+         * @param parserThread executor to call listener on
+         * @param listener receives the {@link Media.ParsedStatus} once the parse is over
+         * @return false if the parse couldn't be started
+         */
+        boolean start(Executor parserThread, JobListener listener);
+
+        /**
+         * Get the result of a successful parse, storing it into cache if not null.
+         */
+        @Nullable
+        MediaMetaCache.Entry getEntry(@Nullable MediaMetaCache cache);
+
+        /**
+         * Stop parsing if still running, and release the resources of the job.
+         */
+        void release();
+    }
+
+    interface JobListener {
+        void onParsed(int status);
+    }
+
+    interface JobFactory {
+        Job create(Uri uri);
+    }
+
+    /**
+     * @param libVLC a valid libVLC
+     * @param cache cache to look medias up and store results into, or null
+     * @param maxConcurrency maximum number of medias parsed at once, or 0 for one per core
+     * @param timeout parse timeout of each media in milliseconds, see {@link Media#parseAsync(int, int)}
+     * @param flags see {@link Media.Parse}
+     */
+    public MediaParser(final LibVLC libVLC, @Nullable MediaMetaCache cache, int maxConcurrency,
+                       final int timeout, final int flags) {
+        this(new JobFactory() {
+            @Override
+            public Job create(Uri uri) {
+                return new MediaJob(new Media(libVLC, uri), timeout, flags);
+            }
+        }, cache, maxConcurrency);
+    }
+
+    /**
+     * @param jobFactory creates the parse of each media
+     */
+    MediaParser(JobFactory jobFactory, @Nullable MediaMetaCache cache, int maxConcurrency) {
+        mJobFactory = jobFactory;
+        mCache = cache;
+        mMaxConcurrency = maxConcurrency > 0 ? maxConcurrency
+                : Runtime.getRuntime().availableProcessors();
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "MediaParser");
+            }
+        });
+    }
+
+    /**
+     * Parse medias, delivering results on the main thread.
+     */
+    public Task parse(Collection<Uri> uris, Listener listener) {
+        return parse(uris, listener, new Handler(Looper.getMainLooper()));
+    }
+
+    public Task parse(Collection<Uri> uris, Listener listener, final Handler handler) {
+        return parse(uris, listener, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * Parse medias, delivering results through an Executor.
+     */
+    Task parse(Collection<Uri> uris, Listener listener, Executor delivery) {
+        final Task task = new Task(uris, listener, delivery);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                task.fill();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Stop the parser thread. Running tasks must be cancelled first.
+     */
+    public void release() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * A running bulk parse.
+     */
+    public class Task {
+        private final Listener mListener;
+        private final Executor mDelivery;
+        private final int mTotal;
+        private final ArrayDeque<Uri> mPending;
+        private final ArrayList<Request> mRequests = new ArrayList<Request>();
+        private volatile int mDone = 0;
+        private volatile boolean mCancelled = false;
+        /* set by whichever of the completion and cancel() comes first, so that
+         * onFinished is delivered exactly once */
+        private final AtomicBoolean mFinished = new AtomicBoolean(false);
+
+        private Task(Collection<Uri> uris, Listener listener, Executor delivery) {
+            mListener = listener;
+            mDelivery = delivery;
+            mPending = new ArrayDeque<Uri>(uris);
+            mTotal = mPending.size();
+        }
+
+        public int getDone() {
+            return mDone;
+        }
+
+        public int getTotal() {
+            return mTotal;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Stop parsing. No result is delivered after this call, only
+         * {@link Listener#onFinished(boolean)}, unless the task already finished.
+         */
+        public void cancel() {
+            if (!mFinished.compareAndSet(false, true))
+                return;
+            mCancelled = true;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mPending.clear();
+                    for (Request request : mRequests)
+                        request.mJob.release();
+                    mRequests.clear();
+                    mDelivery.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            mListener.onFinished(true);
+                        }
+                    });
+                }
+            });
+        }
+
+        /* on the parser thread */
+        private void fill() {
+            while (!mCancelled && mRequests.size() < mMaxConcurrency && !mPending.isEmpty()) {
+                final Uri uri = mPending.poll();
+                final MediaMetaCache.Entry entry = mCache != null ? mCache.get(uri) : null;
+                if (entry != null) {
+                    deliver(uri, Media.ParsedStatus.Done, entry);
+                    continue;
+                }
+
+                final Request request = new Request(uri, mJobFactory.create(uri));
+                if (request.mJob.start(mExecutor, request)) {
+                    mRequests.add(request);
+                } else {
+                    request.mJob.release();
+                    deliver(uri, Media.ParsedStatus.Failed, null);
+                }
+            }
+            if (mRequests.isEmpty() && mPending.isEmpty()
+                    && mFinished.compareAndSet(false, true)) {
+                mDelivery.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onFinished(false);
+                    }
+                });
+            }
+        }
+
+        /* on the parser thread */
+        private void complete(Request request, int status) {
+            if (!mRequests.remove(request))
+                return;
+
+            MediaMetaCache.Entry entry = null;
+            if (status == Media.ParsedStatus.Done)
+                entry = request.mJob.getEntry(mCache);
+            request.mJob.release();
+            deliver(request.mUri, status, entry);
+            fill();
+        }
+
+        private void deliver(final Uri uri, final int status, final MediaMetaCache.Entry entry) {
+            final int done = ++mDone;
+            mDelivery.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancelled)
+                        return;
+                    mListener.onMediaParsed(uri, status, entry);
+                    mListener.onProgress(done, mTotal);
+                }
+            });
+        }
+
+        private class Request implements JobListener {
+            private final Uri mUri;
+            private final Job mJob;
+
+            private Request(Uri uri, Job job) {
+                mUri = uri;
+                mJob = job;
+            }
+
+            @Override
+            public void onParsed(int status) {
+                complete(this, status);
+            }
+        }
+    }
+
+    /**
+     * Parses a Media with {@link Media#parseAsync(int, int)}.
+     */
+    private static class MediaJob implements Job, Media.EventListener {
+        private final Media mMedia;
+        private final int mTimeout;
+        private final int mFlags;
+        private JobListener mListener;
+
+        private MediaJob(Media media, int timeout, int flags) {
+            mMedia = media;
+            mTimeout = timeout;
+            mFlags = flags;
+        }
+
+        @Override
+        public boolean start(Executor parserThread, JobListener listener) {
+            mListener = listener;
+            mMedia.addEventListener(this, parserThread, PARSE_EVENTS);
+            return mMedia.parseAsync(mFlags, mTimeout);
+        }
+
+        @Override
+        public MediaMetaCache.Entry getEntry(@Nullable MediaMetaCache cache) {
+            return cache != null ? cache.put(mMedia) : MediaMetaCache.createEntry(mMedia);
+        }
+
+        @Override
+        public void release() {
+            mMedia.removeEventListener(this);
+            mMedia.release();
+        }
+
+        @Override
+        public void onEvent(Media.Event event) {
+            if (event.type == Media.Event.ParsedChanged)
+                mListener.onParsed(event.getParsedStatus());
+        }
+    }
+}
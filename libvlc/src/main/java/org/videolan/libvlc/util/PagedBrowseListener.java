@@ -0,0 +1,352 @@
+/*****************************************************************************
+ * PagedBrowseListener.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.MediaList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the medias found by {@link MediaBrowser#browse} by pages, see
+ * {@link MediaBrowser#setPagedBrowseListener}.
+ *
+ * Browse events are received and batched on a background thread, and the main thread only
+ * gets one message per page. Added medias are buffered and delivered as one page once
+ * pageSize of them are pending, or windowMs after the first of them arrived. A page is only
+ * delivered after the consumer asked for it with {@link #requestNextPage()} (the first one is
+ * requested up front), so a huge directory is consumed at the pace of the UI.
+ *
+ * libvlc can't be paused while it enumerates a folder, so the buffer is bounded instead:
+ * once maxPending medias are waiting, pages are delivered without waiting for a request.
+ */
+public class PagedBrowseListener {
+
+    public interface PageListener {
+        /**
+         * Received on the main thread when a page of medias is delivered. The medias are only
+         * valid during this call, unless retained.
+         *
+         * @param index index of the first media of the page
+         * @param medias added medias, in the order they were found
+         * @param total number of medias found so far, delivered or not
+         */
+        void onMediaPageAdded(int index, List<Media> medias, int total);
+
+        /**
+         * Received on the main thread when a delivered media is removed.
+         */
+        void onMediaRemoved(int index, Media media);
+
+        /**
+         * Received on the main thread when the browse ended and every media was delivered.
+         */
+        void onBrowseEnd(int total);
+    }
+
+    private final PageListener mListener;
+    private final int mPageSize;
+    private final long mWindowMs;
+    private final int mMaxPending;
+    private final ScheduledExecutorService mExecutor;
+    private final Executor mMainExecutor;
+
+    /* guarded by this, touched from the executor thread and the main thread */
+    private final ArrayDeque<Media> mPending = new ArrayDeque<Media>();
+    private ScheduledFuture<?> mWindowFuture = null;
+    private int mWindowSerial = 0;
+    private boolean mWindowElapsed = false;
+    private int mDelivered = 0;
+    private int mRequestedPages = 1;
+    private boolean mEnded = false;
+    private int mGeneration = 0;
+    private MediaList mMediaList = null;
+    private MediaList.EventListener mMediaListEventListener = null;
+    private volatile int mTotal = 0;
+
+    /**
+     * Receives the events of one browse, on the executor thread. An event dequeued right
+     * before the browse was detached is ignored.
+     */
+    private final class BrowseEventListener implements MediaList.EventListener {
+        private final int mBrowseGeneration;
+
+        BrowseEventListener(int generation) {
+            mBrowseGeneration = generation;
+        }
+
+        @Override
+        public void onEvent(MediaList.Event event) {
+            synchronized (PagedBrowseListener.this) {
+                if (mBrowseGeneration != mGeneration)
+                    return;
+                switch (event.type) {
+                case MediaList.Event.ItemAdded:
+                    onMediaAdded(event.media);
+                    break;
+                case MediaList.Event.ItemDeleted:
+                    onMediaRemoved(event.index, event.media);
+                    break;
+                case MediaList.Event.EndReached:
+                    onBrowseEnd();
+                    break;
+                }
+            }
+        }
+    }
+
+    private final Runnable mDeliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (PagedBrowseListener.this) {
+                deliver();
+            }
+        }
+    };
+
+    /**
+     * @param pageSize maximum number of medias per page
+     * @param windowMs maximum time a media is buffered before its page is delivered, if
+     *                 requested
+     * @param maxPending maximum number of medias buffered while no page is requested, at
+     *                   least pageSize
+     */
+    public PagedBrowseListener(PageListener listener, int pageSize, long windowMs,
+                               int maxPending) {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("pageSize should be > 0");
+        if (maxPending < pageSize)
+            throw new IllegalArgumentException("maxPending should be >= pageSize");
+        mListener = listener;
+        mPageSize = pageSize;
+        mWindowMs = windowMs;
+        mMaxPending = maxPending;
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "MediaBrowser:Pages");
+            }
+        });
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mMainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        };
+    }
+
+    /**
+     * Allow the next page to be delivered.
+     */
+    @MainThread
+    public synchronized void requestNextPage() {
+        mRequestedPages++;
+        /* pages are built on the background thread, only delivered on this one */
+        if (!mPending.isEmpty() || mEnded)
+            mExecutor.execute(mDeliverRunnable);
+    }
+
+    /**
+     * Get the number of medias found so far, delivered or not.
+     */
+    public int getTotalCount() {
+        return mTotal;
+    }
+
+    /**
+     * Get the number of medias waiting for a page to be requested.
+     */
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Stop the background thread. The MediaBrowser using this listener should be released, or
+     * use another listener, first.
+     */
+    @MainThread
+    public void release() {
+        detach();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Start receiving the medias of a browse, dropping the ones of the previous browse.
+     */
+    synchronized void attach(MediaList mediaList) {
+        detach();
+        mMediaList = mediaList;
+        mMediaListEventListener = new BrowseEventListener(mGeneration);
+        mMediaList.addEventListener(mMediaListEventListener, mExecutor);
+    }
+
+    /**
+     * Drop pending medias, and pages not delivered yet.
+     */
+    synchronized void detach() {
+        if (mMediaList != null) {
+            mMediaList.removeEventListener(mMediaListEventListener);
+            mMediaList = null;
+            mMediaListEventListener = null;
+        }
+        cancelWindow();
+        for (Media media : mPending)
+            media.release();
+        mPending.clear();
+        mGeneration++;
+        mDelivered = 0;
+        mRequestedPages = 1;
+        mEnded = false;
+        mTotal = 0;
+    }
+
+    private void onMediaAdded(Media media) {
+        media.retain();
+        mPending.addLast(media);
+        mTotal++;
+        if (mPending.size() == 1)
+            scheduleWindow();
+        deliver();
+    }
+
+    private void onMediaRemoved(final int index, final Media media) {
+        /* pending medias are the last ones found, the others keep the index they had in their
+         * page, less the removed ones */
+        if (mPending.remove(media)) {
+            media.release();
+            mTotal--;
+            if (mPending.isEmpty())
+                cancelWindow();
+            return;
+        }
+        if (index < 0 || index >= mDelivered)
+            return;
+        mDelivered--;
+        mTotal--;
+        final int generation = mGeneration;
+        mMainExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(generation))
+                    mListener.onMediaRemoved(index, media);
+            }
+        });
+    }
+
+    private void onBrowseEnd() {
+        mEnded = true;
+        deliver();
+    }
+
+    /* the methods below are called with the lock held, on the executor thread */
+
+    private void deliver() {
+        while (!mPending.isEmpty()
+                && (mRequestedPages > 0 || mPending.size() >= mMaxPending)) {
+            if (mPending.size() < mPageSize && !mEnded && !mWindowElapsed)
+                return;
+
+            final int count = Math.min(mPageSize, mPending.size());
+            final List<Media> page = new ArrayList<Media>(count);
+            for (int i = 0; i < count; ++i)
+                page.add(mPending.removeFirst());
+            if (mRequestedPages > 0)
+                mRequestedPages--;
+            cancelWindow();
+            if (!mPending.isEmpty())
+                scheduleWindow();
+
+            final int index = mDelivered;
+            mDelivered += count;
+            postPage(index, page, mTotal);
+        }
+        if (mEnded && mPending.isEmpty()) {
+            mEnded = false;
+            final int generation = mGeneration;
+            final int total = mTotal;
+            mMainExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCurrent(generation))
+                        mListener.onBrowseEnd(total);
+                }
+            });
+        }
+    }
+
+    private void postPage(final int index, final List<Media> page, final int total) {
+        final int generation = mGeneration;
+        mMainExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(generation))
+                    mListener.onMediaPageAdded(index, Collections.unmodifiableList(page), total);
+                for (Media media : page)
+                    media.release();
+            }
+        });
+    }
+
+    private synchronized boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    private void scheduleWindow() {
+        mWindowElapsed = false;
+        final int serial = ++mWindowSerial;
+        mWindowFuture = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PagedBrowseListener.this) {
+                    /* the window may have been cancelled while this was waiting for the lock */
+                    if (serial != mWindowSerial)
+                        return;
+                    mWindowFuture = null;
+                    mWindowElapsed = true;
+                    deliver();
+                }
+            }
+        }, mWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelWindow() {
+        if (mWindowFuture != null) {
+            mWindowFuture.cancel(false);
+            mWindowFuture = null;
+        }
+        mWindowSerial++;
+        mWindowElapsed = false;
+    }
+}
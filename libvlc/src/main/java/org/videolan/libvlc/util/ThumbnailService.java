@@ -0,0 +1,529 @@
+/*****************************************************************************
+ * ThumbnailService.java
+ *****************************************************************************
+ * Copyright © 2016 VLC authors, VideoLAN and VideoLabs
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.videolan.libvlc.LibVLC;
+import org.videolan.libvlc.Media;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generate thumbnails with {@link VLCUtil#getThumbnail(LibVLC, Uri, int, int)} on a bounded
+ * pool of worker threads.
+ *
+ * Requests for the same Uri and size share a single decode. A request can be cancelled, when
+ * its view is recycled for instance: the decode is dropped if it didn't start yet and no other
+ * request waits for it. Thumbnails are kept in a memory LRU bounded by their size in bytes,
+ * and, if a directory is given, as JPEG files in a disk LRU bounded the same way, so that a
+ * thumbnail generated once is never decoded by libvlc again.
+ *
+ * With a {@link BitmapPool}, thumbnails are rendered into pooled bitmaps by a
+ * {@link FrameGrabber} per worker thread, so that a long grid allocates neither an array nor a
+ * bitmap per thumbnail. Delivered bitmaps are then given back with {@link #release(Bitmap)}.
+ *
+ * {@link #load} must be called on the main thread, where results are delivered.
+ */
+public class ThumbnailService {
+    private static final String TAG = "LibVLC/ThumbnailService";
+    private static final String SUFFIX = ".jpg";
+    private static final int JPEG_QUALITY = 85;
+
+    private final LibVLC mLibVLC;
+    private final ExecutorService mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, Job> mJobs = new HashMap<String, Job>();
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskDir;
+    private final long mMaxDiskBytes;
+    /* file name -> file size, least recently used first, loaded on first use */
+    private LinkedHashMap<String, Long> mDiskEntries = null;
+    private long mDiskBytes = 0;
+    private volatile BitmapPool mBitmapPool = null;
+    /* references on the bitmaps handed out: one while in the memory cache, one per delivery
+     * not released yet and one per job delivering it. Weak so that a bitmap its user never
+     * releases is still collected. */
+    private final WeakHashMap<Bitmap, Integer> mBitmapRefs = new WeakHashMap<Bitmap, Integer>();
+    /* on each worker thread, which holds its OpenGL context */
+    private final ThreadLocal<FrameGrabber> mFrameGrabber = new ThreadLocal<FrameGrabber>();
+    private volatile boolean mFrameGrabberFailed = !AndroidUtil.isJellyBeanMR1OrLater();
+
+    public interface Callback {
+        /**
+         * Received on the main thread when a thumbnail is available.
+         *
+         * @param bitmap the thumbnail, or null if it couldn't be generated. It is shared with
+         *               the cache and must not be recycled, but given back with
+         *               {@link #release(Bitmap)} once it isn't displayed anymore.
+         */
+        void onThumbnail(Uri uri, @Nullable Bitmap bitmap);
+    }
+
+    /**
+     * @param libVLC a valid libVLC
+     * @param workers number of thumbnails generated at once, or 0 for one per core
+     * @param maxMemoryBytes maximum size of the thumbnails kept in memory
+     * @param diskDir directory where thumbnails are stored, or null for no disk cache
+     * @param maxDiskBytes maximum size of the files in diskDir
+     */
+    public ThumbnailService(LibVLC libVLC, int workers, int maxMemoryBytes,
+                            @Nullable File diskDir, long maxDiskBytes) {
+        mLibVLC = libVLC;
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldBitmap,
+                                        Bitmap newBitmap) {
+                releaseBitmap(oldBitmap);
+            }
+        };
+        mDiskDir = diskDir;
+        mMaxDiskBytes = maxDiskBytes;
+        mExecutor = Executors.newFixedThreadPool(workers > 0 ? workers
+                : Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        try {
+                            runnable.run();
+                        } finally {
+                            final FrameGrabber grabber = mFrameGrabber.get();
+                            if (grabber != null)
+                                grabber.release();
+                        }
+                    }
+                }, "ThumbnailService-" + mCount.incrementAndGet());
+            }
+        });
+    }
+
+    private static String key(Uri uri, int width, int height) {
+        return uri.toString() + '\n' + width + 'x' + height;
+    }
+
+    /**
+     * Render thumbnails into pooled bitmaps. A bitmap goes back to the pool once it left the
+     * memory cache and every delivery of it was given back with {@link #release(Bitmap)}, so
+     * only set a pool if delivered bitmaps are released.
+     *
+     * @param pool the pool, or null to allocate a bitmap per thumbnail
+     */
+    public void setBitmapPool(@Nullable BitmapPool pool) {
+        mBitmapPool = pool;
+    }
+
+    /**
+     * Get a thumbnail if it is in the memory cache. It should be given back with
+     * {@link #release(Bitmap)} like delivered thumbnails.
+     */
+    @Nullable
+    public Bitmap getCached(Uri uri, int width, int height) {
+        return getRetained(key(uri, width, height));
+    }
+
+    /**
+     * Give back a thumbnail delivered to a callback or returned by {@link #getCached}, once it
+     * isn't displayed anymore. With a pool, it is reused for another thumbnail as soon as it
+     * left the memory cache too: it must not be drawn after this call.
+     */
+    public void release(Bitmap bitmap) {
+        releaseBitmap(bitmap);
+    }
+
+    @Nullable
+    private Bitmap getRetained(String key) {
+        final Bitmap bitmap = mMemoryCache.get(key);
+        /* it may have been evicted, and pooled, meanwhile */
+        return bitmap != null && retainBitmap(bitmap) ? bitmap : null;
+    }
+
+    private void trackBitmap(Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            mBitmapRefs.put(bitmap, 1);
+        }
+    }
+
+    private boolean retainBitmap(Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            final Integer refs = mBitmapRefs.get(bitmap);
+            if (refs == null)
+                return false;
+            mBitmapRefs.put(bitmap, refs + 1);
+            return true;
+        }
+    }
+
+    private void releaseBitmap(Bitmap bitmap) {
+        synchronized (mBitmapRefs) {
+            final Integer refs = mBitmapRefs.get(bitmap);
+            if (refs == null)
+                return;
+            if (refs > 1) {
+                mBitmapRefs.put(bitmap, refs - 1);
+                return;
+            }
+            mBitmapRefs.remove(bitmap);
+        }
+        final BitmapPool pool = mBitmapPool;
+        if (pool != null)
+            pool.release(bitmap);
+    }
+
+    /**
+     * Request a thumbnail. The callback is called before this method returns if the thumbnail
+     * is in the memory cache.
+     *
+     * @return a request that can be cancelled until the callback is called
+     */
+    @MainThread
+    public Request load(Uri uri, int width, int height, Callback callback) {
+        final Request request = new Request(uri, callback);
+        final String key = key(uri, width, height);
+        final Bitmap bitmap = getRetained(key);
+        if (bitmap != null) {
+            callback.onThumbnail(uri, bitmap);
+            return request;
+        }
+
+        Job job = mJobs.get(key);
+        if (job == null) {
+            job = new Job(key, uri, width, height);
+            mJobs.put(key, job);
+            job.mFuture = mExecutor.submit(job);
+        }
+        request.mJob = job;
+        job.mRequests.add(request);
+        return request;
+    }
+
+    /**
+     * Drop the thumbnails kept in memory.
+     */
+    public void clearMemory() {
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * Cancel every request and stop the worker threads. Decodes already started are finished
+     * but not delivered.
+     */
+    @MainThread
+    public void release() {
+        for (Job job : mJobs.values()) {
+            job.mFuture.cancel(false);
+            job.mRequests.clear();
+        }
+        mJobs.clear();
+        mExecutor.shutdown();
+        mMemoryCache.evictAll();
+    }
+
+    /**
+     * A pending thumbnail request.
+     */
+    public class Request {
+        private final Uri mUri;
+        private final Callback mCallback;
+        private Job mJob;
+
+        private Request(Uri uri, Callback callback) {
+            mUri = uri;
+            mCallback = callback;
+        }
+
+        /**
+         * Don't deliver this request. Does nothing if it was already delivered.
+         */
+        @MainThread
+        public void cancel() {
+            final Job job = mJob;
+            if (job == null)
+                return;
+            mJob = null;
+            job.mRequests.remove(this);
+            /* a started decode can't be interrupted, let it fill the caches */
+            if (job.mRequests.isEmpty() && job.mFuture.cancel(false))
+                mJobs.remove(job.mKey);
+        }
+
+        public boolean isPending() {
+            return mJob != null;
+        }
+    }
+
+    private class Job implements Runnable {
+        private final String mKey;
+        private final Uri mUri;
+        private final int mWidth;
+        private final int mHeight;
+        /* on the main thread */
+        private final ArrayList<Request> mRequests = new ArrayList<Request>(1);
+        private Future<?> mFuture;
+
+        private Job(String key, Uri uri, int width, int height) {
+            mKey = key;
+            mUri = uri;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            /* the job holds a reference until the bitmap is delivered */
+            Bitmap bitmap = getRetained(mKey);
+            if (bitmap == null) {
+                final String name = fileName(mKey);
+                bitmap = readDisk(name);
+                if (bitmap == null) {
+                    bitmap = generate(mUri, mWidth, mHeight);
+                    if (bitmap != null)
+                        writeDisk(name, bitmap);
+                }
+                if (bitmap != null) {
+                    trackBitmap(bitmap);
+                    retainBitmap(bitmap);
+                    mMemoryCache.put(mKey, bitmap);
+                }
+            }
+
+            final Bitmap result = bitmap;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mJobs.get(mKey) == Job.this)
+                        mJobs.remove(mKey);
+                    for (Request request : mRequests) {
+                        request.mJob = null;
+                        if (result != null)
+                            retainBitmap(result);
+                        request.mCallback.onThumbnail(request.mUri, result);
+                    }
+                    mRequests.clear();
+                    if (result != null)
+                        releaseBitmap(result);
+                }
+            });
+        }
+    }
+
+    @Nullable
+    private Bitmap generate(Uri uri, int width, int height) {
+        final BitmapPool pool = mBitmapPool;
+        final Bitmap bitmap = pool != null ? pool.acquire(width, height)
+                : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final FrameGrabber grabber = pool != null ? getFrameGrabber() : null;
+        final boolean filled = grabber != null ? grabThumbnail(grabber, uri, bitmap)
+                : VLCUtil.getThumbnail(mLibVLC, uri, bitmap);
+        if (filled)
+            return bitmap;
+        if (pool != null)
+            pool.release(bitmap);
+        return null;
+    }
+
+    @Nullable
+    private FrameGrabber getFrameGrabber() {
+        FrameGrabber grabber = mFrameGrabber.get();
+        if (grabber != null || mFrameGrabberFailed)
+            return grabber;
+        try {
+            grabber = new FrameGrabber(mLibVLC);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "can't grab frames, using the libvlc thumbnailer", e);
+            mFrameGrabberFailed = true;
+            return null;
+        }
+        mFrameGrabber.set(grabber);
+        return grabber;
+    }
+
+    private boolean grabThumbnail(FrameGrabber grabber, Uri uri, Bitmap bitmap) {
+        final Media media = VLCUtil.createThumbnailMedia(mLibVLC, uri);
+        /* a key frame near the middle is as good a thumbnail, and much faster to reach */
+        media.addOption(":input-fast-seek");
+        try {
+            if (!grabber.open(media))
+                return false;
+            /* the libvlc thumbnailer also takes the frame at the middle */
+            final long length = grabber.getLength();
+            return grabber.grab(length > 0 ? length / 2 : -1, bitmap);
+        } finally {
+            media.release();
+            grabber.close();
+        }
+    }
+
+    private static String fileName(String key) {
+        /* two hashes of 32 bits to keep collisions unlikely among a few thousand files */
+        final int h1 = key.hashCode();
+        int h2 = 0;
+        for (int i = key.length() - 1; i >= 0; --i)
+            h2 = 131 * h2 + key.charAt(i);
+        return String.format(Locale.US, "%08x%08x", h1, h2) + SUFFIX;
+    }
+
+    @Nullable
+    private Bitmap readDisk(String name) {
+        if (mDiskDir == null)
+            return null;
+        synchronized (this) {
+            if (loadDiskEntries().get(name) == null)
+                return null;
+        }
+        final File file = new File(mDiskDir, name);
+        final Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            synchronized (this) {
+                removeDiskEntry(name);
+            }
+            return null;
+        }
+        /* keep the order for the next run */
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    private void writeDisk(String name, Bitmap bitmap) {
+        if (mDiskDir == null)
+            return;
+        final File file = new File(mDiskDir, name);
+        final File tmp = new File(mDiskDir, name + ".tmp");
+        OutputStream out = null;
+        try {
+            if (!mDiskDir.isDirectory() && !mDiskDir.mkdirs())
+                throw new IOException("can't create " + mDiskDir);
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out))
+                throw new IOException("can't compress " + name);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file))
+                throw new IOException("can't rename " + tmp);
+        } catch (IOException e) {
+            Log.w(TAG, "can't write " + file, e);
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+            tmp.delete();
+        }
+
+        synchronized (this) {
+            final LinkedHashMap<String, Long> entries = loadDiskEntries();
+            final Long previous = entries.put(name, file.length());
+            if (previous != null)
+                mDiskBytes -= previous;
+            mDiskBytes += file.length();
+            final Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (mDiskBytes > mMaxDiskBytes && it.hasNext()) {
+                final Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().equals(name))
+                    break;
+                it.remove();
+                mDiskBytes -= entry.getValue();
+                new File(mDiskDir, entry.getKey()).delete();
+            }
+        }
+    }
+
+    private void removeDiskEntry(String name) {
+        final Long size = mDiskEntries.remove(name);
+        if (size != null)
+            mDiskBytes -= size;
+        new File(mDiskDir, name).delete();
+    }
+
+    private LinkedHashMap<String, Long> loadDiskEntries() {
+        if (mDiskEntries != null)
+            return mDiskEntries;
+        mDiskEntries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+        final File[] files = mDiskDir.listFiles();
+        if (files == null)
+            return mDiskEntries;
+
+        final long[] modified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+            }
+        });
+        for (Integer i : order) {
+            final File file = files[i];
+            if (!file.getName().endsWith(SUFFIX)) {
+                /* leftover of an interrupted write */
+                if (file.getName().endsWith(SUFFIX + ".tmp"))
+                    file.delete();
+                continue;
+            }
+            final long size = file.length();
+            mDiskEntries.put(file.getName(), size);
+            mDiskBytes += size;
+        }
+        return mDiskEntries;
+    }
+}
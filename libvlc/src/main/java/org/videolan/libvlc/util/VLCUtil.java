@@ -23,6 +23,7 @@ package org.videolan.libvlc.util;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
@@ -525,18 +526,44 @@ public class VLCUtil {
 
     /**
      * Get a media thumbnail.
-     * @return a bytearray with the RGBA thumbnail data inside.
+     * @return a bytearray with the RGBA thumbnail data inside, allocated for each call, see
+     * {@link FrameGrabber} to avoid it.
      */
     public static byte[] getThumbnail(LibVLC libVLC, Uri uri, int i_width, int i_height) {
-        /* dvd thumbnails can work only with dvdsimple demux */
-        if (uri.getLastPathSegment().endsWith(".iso"))
-            uri = Uri.parse("dvdsimple://" + uri.getEncodedPath());
-        final Media media = new Media(libVLC, uri);
+        final Media media = createThumbnailMedia(libVLC, uri);
         byte[] bytes = getThumbnail(media, i_width, i_height);
         media.release();
         return bytes;
     }
 
+    /**
+     * Get a media thumbnail into a bitmap, so that bitmaps can be reused from one thumbnail to
+     * the next, see {@link BitmapPool}.
+     * @param bitmap a mutable ARGB_8888 bitmap, of the size of the thumbnail
+     * @return true if the bitmap was filled
+     */
+    public static boolean getThumbnail(LibVLC libVLC, Uri uri, Bitmap bitmap) {
+        final Media media = createThumbnailMedia(libVLC, uri);
+        final boolean filled = getThumbnail(media, bitmap);
+        media.release();
+        return filled;
+    }
+
+    public static boolean getThumbnail(Media media, Bitmap bitmap) {
+        final byte[] bytes = getThumbnail(media, bitmap.getWidth(), bitmap.getHeight());
+        if (bytes == null || bytes.length != bitmap.getWidth() * bitmap.getHeight() * 4)
+            return false;
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(bytes));
+        return true;
+    }
+
+    static Media createThumbnailMedia(LibVLC libVLC, Uri uri) {
+        /* dvd thumbnails can work only with dvdsimple demux */
+        if (uri.getLastPathSegment().endsWith(".iso"))
+            uri = Uri.parse("dvdsimple://" + uri.getEncodedPath());
+        return new Media(libVLC, uri);
+    }
+
     public static byte[] getThumbnail(Media media, int i_width, int i_height) {
         media.addOption(":no-audio");
         media.addOption(":no-spu");
@@ -0,0 +1,212 @@
+package org.videolan.libvlc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the delivery of events from several players to one consumer thread, standing in
+ * for the main thread, through an {@link EventQueue} and with one task per event.
+ * <p>
+ * Skipped unless benchmarks are enabled: {@code ./gradlew :libvlc:testDebugUnitTest
+ * -Dbenchmarks=true}. The results are logged.
+ */
+public class EventQueueBenchmarkTest {
+
+    static final String BENCHMARKS_PROPERTY = "benchmarks";
+    private static final Logger LOG = Logger.getLogger("EventQueueBenchmarkTest");
+
+    private static final int PLAYER_COUNT = 4;
+    private static final int EVENTS_PER_PLAYER = 50000;
+
+    private ExecutorService consumerThread;
+    private MeasuringExecutor consumer;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        consumerThread = Executors.newSingleThreadExecutor();
+        consumer = new MeasuringExecutor(consumerThread);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (consumerThread == null)
+            return;
+        consumerThread.shutdown();
+        consumerThread.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void batchedDelivery() throws InterruptedException {
+        final EventQueue queue = new EventQueue(consumer);
+        Result batched = run(new Dispatcher() {
+            @Override
+            public void dispatch(EventQueue.Registration registration, VLCEvent event) {
+                queue.post(registration, event);
+            }
+        }, queue);
+        Result perEvent = run(new Dispatcher() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void dispatch(final EventQueue.Registration registration,
+                                 final VLCEvent event) {
+                consumer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        registration.listener.onEvent(event);
+                    }
+                });
+            }
+        }, null);
+
+        LOG.info("batched: " + batched);
+        LOG.info("per event: " + perEvent);
+
+        int eventCount = PLAYER_COUNT * EVENTS_PER_PLAYER;
+        assertEquals(eventCount, perEvent.taskCount);
+        assertTrue("batching should need fewer tasks than events, got " + batched.taskCount,
+                batched.taskCount < eventCount);
+    }
+
+    private interface Dispatcher {
+        void dispatch(EventQueue.Registration registration, VLCEvent event);
+    }
+
+    private Result run(final Dispatcher dispatcher, EventQueue queue)
+            throws InterruptedException {
+        consumer.reset();
+        final CountDownLatch delivered = new CountDownLatch(PLAYER_COUNT * EVENTS_PER_PLAYER);
+        final OrderCheckingListener[] listeners = new OrderCheckingListener[PLAYER_COUNT];
+        final EventQueue.Registration[] registrations = new EventQueue.Registration[PLAYER_COUNT];
+        for (int i = 0; i < PLAYER_COUNT; i++) {
+            listeners[i] = new OrderCheckingListener(delivered);
+            registrations[i] = new EventQueue.Registration(listeners[i], queue,
+                    VLCEvent.ALL_EVENTS);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] players = new Thread[PLAYER_COUNT];
+        for (int i = 0; i < PLAYER_COUNT; i++) {
+            final EventQueue.Registration registration = registrations[i];
+            players[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int time = 0; time < EVENTS_PER_PLAYER; time++)
+                        dispatcher.dispatch(registration,
+                                new MediaPlayer.Event(MediaPlayer.Event.TimeChanged, time));
+                }
+            });
+            players[i].start();
+        }
+
+        long startNs = System.nanoTime();
+        start.countDown();
+        assertTrue(delivered.await(60, TimeUnit.SECONDS));
+        long elapsedNs = System.nanoTime() - startNs;
+        for (Thread player : players)
+            player.join();
+
+        for (OrderCheckingListener listener : listeners) {
+            assertEquals(EVENTS_PER_PLAYER, listener.count);
+            assertTrue("events of a player were reordered", listener.ordered);
+        }
+        return new Result(PLAYER_COUNT * EVENTS_PER_PLAYER, consumer.taskCount.get(),
+                elapsedNs, consumer.cpuTimeNs.get());
+    }
+
+    private static final class OrderCheckingListener
+            implements VLCEvent.Listener<MediaPlayer.Event> {
+        private final CountDownLatch delivered;
+        /* only used on the consumer thread */
+        private int count;
+        private long lastTime = -1;
+        private boolean ordered = true;
+
+        OrderCheckingListener(CountDownLatch delivered) {
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onEvent(MediaPlayer.Event event) {
+            if (event.getTimeChanged() != lastTime + 1)
+                ordered = false;
+            lastTime = event.getTimeChanged();
+            count++;
+            delivered.countDown();
+        }
+    }
+
+    /**
+     * Counts the tasks run on the consumer thread and the CPU time they take.
+     */
+    private static final class MeasuringExecutor implements Executor {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final Executor executor;
+        final AtomicLong taskCount = new AtomicLong();
+        final AtomicLong cpuTimeNs = new AtomicLong();
+
+        MeasuringExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        void reset() {
+            taskCount.set(0);
+            cpuTimeNs.set(0);
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            taskCount.incrementAndGet();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startNs = threads.getCurrentThreadCpuTime();
+                    task.run();
+                    cpuTimeNs.addAndGet(threads.getCurrentThreadCpuTime() - startNs);
+                }
+            });
+        }
+    }
+
+    private static final class Result {
+        final long eventCount;
+        final long taskCount;
+        final long elapsedNs;
+        final long consumerCpuNs;
+
+        Result(long eventCount, long taskCount, long elapsedNs, long consumerCpuNs) {
+            this.eventCount = eventCount;
+            this.taskCount = taskCount;
+            this.elapsedNs = elapsedNs;
+            this.consumerCpuNs = consumerCpuNs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d events in %d tasks, %.0f events/s, "
+                            + "consumer thread busy %.1f ms",
+                    eventCount, taskCount, eventCount * 1e9 / elapsedNs, consumerCpuNs / 1e6);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.videolan.libvlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the time and the allocations of the Uri/mrl conversions of {@link Media} with the
+ * toCharArray and StringBuilder implementation they replaced, on the realistic paths of
+ * {@link MrlCodecTest}.
+ * <p>
+ * Skipped unless benchmarks are enabled: {@code ./gradlew :libvlc:testDebugUnitTest
+ * -Dbenchmarks=true}. The results are logged.
+ */
+public class MrlCodecBenchmarkTest {
+
+    private static final Logger LOG = Logger.getLogger("MrlCodecBenchmarkTest");
+    private static final String URI_AUTHORIZED_CHARS = "!'()*";
+    private static final int WARMUP_ROUNDS = 20000;
+    private static final int ROUNDS = 200000;
+
+    private com.sun.management.ThreadMXBean threads;
+    /* keeps the results alive so that the conversions can't be optimized away */
+    private int sink;
+
+    private interface Codec {
+        String convert(String value);
+    }
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean(EventQueueBenchmarkTest.BENCHMARKS_PROPERTY));
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void encode() {
+        compare("encode", MrlCodecTest.PATHS, new Codec() {
+            @Override
+            public String convert(String value) {
+                return Media.encodeMrl(value);
+            }
+        }, new Codec() {
+            @Override
+            public String convert(String value) {
+                return copyingEncode(value);
+            }
+        });
+    }
+
+    @Test
+    public void decode() {
+        final String[] mrls = new String[MrlCodecTest.PATHS.length];
+        for (int i = 0; i < mrls.length; i++)
+            mrls[i] = Media.encodeMrl(MrlCodecTest.PATHS[i]);
+        compare("decode", mrls, new Codec() {
+            @Override
+            public String convert(String value) {
+                return Media.decodeMrl(value);
+            }
+        }, new Codec() {
+            @Override
+            public String convert(String value) {
+                return copyingDecode(value);
+            }
+        });
+    }
+
+    private void compare(String name, String[] inputs, Codec codec, Codec reference) {
+        run(inputs, codec, WARMUP_ROUNDS);
+        run(inputs, reference, WARMUP_ROUNDS);
+        final Result result = run(inputs, codec, ROUNDS);
+        final Result referenceResult = run(inputs, reference, ROUNDS);
+        LOG.info(name + ": " + result);
+        LOG.info(name + " (copying): " + referenceResult);
+
+        assertTrue(name + " should allocate less: " + result + " vs " + referenceResult,
+                result.bytesPerOp < referenceResult.bytesPerOp);
+    }
+
+    private Result run(String[] inputs, Codec codec, int rounds) {
+        final long thread = Thread.currentThread().getId();
+        final long startBytes = threads.getThreadAllocatedBytes(thread);
+        final long startNs = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String input : inputs)
+                sink += codec.convert(input).length();
+        }
+        final long elapsedNs = System.nanoTime() - startNs;
+        final long ops = (long) rounds * inputs.length;
+        return new Result((double) elapsedNs / ops,
+                (double) (threads.getThreadAllocatedBytes(thread) - startBytes) / ops);
+    }
+
+    private static final class Result {
+        final double nsPerOp;
+        final double bytesPerOp;
+
+        Result(double nsPerOp, double bytesPerOp) {
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f ns/op, %.1f bytes/op", nsPerOp, bytesPerOp);
+        }
+    }
+
+    /* Media.locationFromUri before the codec */
+    private static String copyingEncode(String location) {
+        final char array[] = location.toCharArray();
+        final StringBuilder sb = new StringBuilder(array.length * 2);
+        for (final char c : array) {
+            if (URI_AUTHORIZED_CHARS.indexOf(c) != -1)
+                sb.append("%").append(Integer.toHexString(c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /* Media.UriFromMrl before the codec, without the Uri parsing */
+    private static String copyingDecode(String mrl) {
+        final char array[] = mrl.toCharArray();
+        final StringBuilder sb = new StringBuilder(array.length);
+        for (int i = 0; i < array.length; ++i) {
+            final char c = array[i];
+            if (c == '%' && array.length - i >= 3) {
+                try {
+                    final int hex = Integer.parseInt(new String(array, i + 1, 2), 16);
+                    if (URI_AUTHORIZED_CHARS.indexOf(hex) != -1) {
+                        sb.append((char) hex);
+                        i += 2;
+                        continue;
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package org.videolan.libvlc;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip properties of the conversion between Uri strings and VLC mrls, checked on
+ * realistic paths and on random strings built from the characters that matter to it.
+ */
+public class MrlCodecTest {
+
+    private static final String URI_AUTHORIZED_CHARS = "!'()*";
+    private static final long SEED = 0x5eed;
+    private static final int ITERATIONS = 20000;
+    private static final int MAX_LENGTH = 40;
+
+    private static final String[] ALPHABET = {
+            "a", "Z", "0", "7", "/", ":", "?", "&", "=", "#", "@", "-", ".", "_", "~", " ",
+            "!", "'", "(", ")", "*",
+            "%", "%2", "%20", "%21", "%27", "%28", "%29", "%2a", "%2A", "%2f", "%zz", "%e9",
+            "é", "中", "🎵",
+    };
+
+    static final String[] PATHS = {
+            "smb://nas.local/Movies/Alien%20(1979)/Alien.mkv",
+            "smb://user@192.168.1.10/share/Kids'%20Shows/Ep%201!.mp4",
+            "upnp://http://192.168.1.20:8200/MediaItems/1234.mkv",
+            "http://192.168.1.20:49152/content/media/object_id/42/res_id/0/ext/file.mp3",
+            "file:///storage/emulated/0/Music/AC%2FDC/Back%20in%20Black%20(Remastered).flac",
+            "ftp://host/pub/*.iso",
+            "nfs://nas/export/video/Am%C3%A9lie.mkv",
+    };
+
+    @Test
+    public void realisticPathsRoundTrip() {
+        for (String location : PATHS) {
+            String mrl = Media.encodeMrl(location);
+            assertNoUriAuthorizedChar(mrl);
+            assertEquals(location, Media.decodeMrl(mrl));
+        }
+    }
+
+    @Test
+    public void knownEncodings() {
+        assertEquals("smb://nas/Kids%27%20Shows%20%28HD%29%21%2a",
+                Media.encodeMrl("smb://nas/Kids'%20Shows%20(HD)!*"));
+        assertEquals("smb://nas/Kids'%20Shows%20(HD)!*",
+                Media.decodeMrl("smb://nas/Kids%27%20Shows%20%28HD%29%21%2A"));
+        /* truncated and invalid escapes are kept */
+        assertEquals("a%2", Media.decodeMrl("a%2"));
+        assertEquals("a%zz%2", Media.decodeMrl("a%zz%2"));
+        assertEquals("%!", Media.decodeMrl("%%21"));
+    }
+
+    @Test
+    public void unchangedStringsAreNotCopied() {
+        String location = "smb://nas.local/Movies/Alien%20%2F%20Aliens.mkv";
+        assertSame(location, Media.encodeMrl(location));
+        assertSame(location, Media.decodeMrl(location));
+    }
+
+    @Test
+    public void encodeThenDecodeIsIdentity() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String location = randomString(random);
+            /* an Uri holding an escaped authorized char decodes to the char itself */
+            if (!Media.decodeMrl(location).equals(location))
+                continue;
+            String mrl = Media.encodeMrl(location);
+            assertNoUriAuthorizedChar(mrl);
+            assertEquals("location " + escape(location), location, Media.decodeMrl(mrl));
+        }
+    }
+
+    @Test
+    public void decodedMrlIsStable() {
+        Random random = new Random(SEED + 1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String mrl = randomString(random);
+            String location = Media.decodeMrl(mrl);
+            assertEquals("mrl " + escape(mrl), location,
+                    Media.decodeMrl(Media.encodeMrl(location)));
+            assertNoUriAuthorizedChar(Media.encodeMrl(location));
+        }
+    }
+
+    @Test
+    public void stringsWithoutSpecialCharsAreKept() {
+        Random random = new Random(SEED + 2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String location = randomString(random);
+            boolean plain = true;
+            for (int j = 0; j < location.length() && plain; j++)
+                plain = URI_AUTHORIZED_CHARS.indexOf(location.charAt(j)) == -1;
+            if (plain)
+                assertSame(location, Media.encodeMrl(location));
+            if (location.indexOf('%') == -1)
+                assertSame(location, Media.decodeMrl(location));
+        }
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(MAX_LENGTH);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        return sb.toString();
+    }
+
+    private static void assertNoUriAuthorizedChar(String mrl) {
+        for (int i = 0; i < mrl.length(); i++)
+            assertTrue(mrl, URI_AUTHORIZED_CHARS.indexOf(mrl.charAt(i)) == -1);
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c > 0x7e)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
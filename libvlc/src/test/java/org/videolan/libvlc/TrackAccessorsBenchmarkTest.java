@@ -0,0 +1,128 @@
+package org.videolan.libvlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the allocations of reading the track counts and the video size of a cached media
+ * through the per-type accessors of {@link MediaMetaCache.Entry}, which don't decode any
+ * Track, and through {@link MediaMetaCache.Entry#getTrack(int)}, which decodes all of them.
+ * The media has dozens of audio and subtitle tracks, like a remuxed movie.
+ * <p>
+ * Skipped unless benchmarks are enabled: {@code ./gradlew :libvlc:testDebugUnitTest
+ * -Dbenchmarks=true}. The results are logged.
+ */
+public class TrackAccessorsBenchmarkTest {
+
+    private static final Logger LOG = Logger.getLogger("TrackAccessorsBenchmarkTest");
+    private static final int AUDIO_TRACKS = 12;
+    private static final int SUBTITLE_TRACKS = 30;
+    private static final int WARMUP_ROUNDS = 5000;
+    private static final int ROUNDS = 50000;
+
+    private com.sun.management.ThreadMXBean threads;
+    private byte[] data;
+    /* keeps the results alive so that the reads can't be optimized away */
+    private long sink;
+
+    private interface Reader {
+        long read(MediaMetaCache.Entry entry);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean(EventQueueBenchmarkTest.BENCHMARKS_PROPERTY));
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Media.Track[] tracks = new Media.Track[1 + AUDIO_TRACKS + SUBTITLE_TRACKS];
+        tracks[0] = Media.createVideoTrackFromNative("h264", null, 0, 100, 40, 8000000, null,
+                "Main", 1080, 1920, 1, 1, 24000, 1001);
+        for (int i = 0; i < AUDIO_TRACKS; i++)
+            tracks[1 + i] = Media.createAudioTrackFromNative("ac-3", null, 1 + i, 0, 0, 640000,
+                    "lang" + i, "Audio " + i, 6, 48000);
+        for (int i = 0; i < SUBTITLE_TRACKS; i++)
+            tracks[1 + AUDIO_TRACKS + i] = Media.createSubtitleTrackFromNative("subt", null,
+                    100 + i, 0, 0, 0, "lang" + i, "Subtitles " + i, "UTF-8");
+        String[] metas = new String[Media.Meta.MAX];
+        metas[Media.Meta.Title] = "title";
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MediaMetaCache.writeEntry(out, new MediaMetaCache.Entry(7200000, Media.Type.File, metas,
+                tracks));
+        out.flush();
+        data = bytes.toByteArray();
+    }
+
+    @Test
+    public void countsAndVideoSize() throws IOException {
+        Reader accessors = new Reader() {
+            @Override
+            public long read(MediaMetaCache.Entry entry) {
+                return entry.getTrackCount(Media.Track.Type.Audio)
+                        + entry.getTrackCount(Media.Track.Type.Text)
+                        + entry.getVideoWidth() * entry.getVideoHeight();
+            }
+        };
+        Reader byIndex = new Reader() {
+            @Override
+            public long read(MediaMetaCache.Entry entry) {
+                int audio = 0;
+                int text = 0;
+                long videoSize = 0;
+                for (int i = 0; i < entry.getTrackCount(); i++) {
+                    Media.Track track = entry.getTrack(i);
+                    if (track.type == Media.Track.Type.Audio)
+                        audio++;
+                    else if (track.type == Media.Track.Type.Text)
+                        text++;
+                    else if (track.type == Media.Track.Type.Video && videoSize == 0)
+                        videoSize = ((Media.VideoTrack) track).width
+                                * ((Media.VideoTrack) track).height;
+                }
+                return audio + text + videoSize;
+            }
+        };
+        assertEquals(byIndex.read(readEntry()), accessors.read(readEntry()));
+
+        run(accessors, WARMUP_ROUNDS);
+        run(byIndex, WARMUP_ROUNDS);
+        double accessorsBytes = run(accessors, ROUNDS);
+        double byIndexBytes = run(byIndex, ROUNDS);
+        LOG.info(String.format(Locale.US, "per-type accessors: %.1f bytes/entry, "
+                + "getTrack(idx): %.1f bytes/entry", accessorsBytes, byIndexBytes));
+
+        assertTrue("accessors: " + accessorsBytes + " bytes, getTrack(idx): " + byIndexBytes,
+                accessorsBytes < byIndexBytes);
+    }
+
+    /* bytes allocated per entry read from the cache and queried, reading included */
+    private double run(Reader reader, int rounds) throws IOException {
+        final long thread = Thread.currentThread().getId();
+        final long startBytes = threads.getThreadAllocatedBytes(thread);
+        for (int round = 0; round < rounds; round++)
+            sink += reader.read(readEntry());
+        return (double) (threads.getThreadAllocatedBytes(thread) - startBytes) / rounds;
+    }
+
+    private MediaMetaCache.Entry readEntry() throws IOException {
+        return MediaMetaCache.readEntry(new DataInputStream(new ByteArrayInputStream(data)),
+                data);
+    }
+}
@@ -0,0 +1,201 @@
+package org.videolan.libvlc;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Per-type track accessors of {@link Media} and of {@link MediaMetaCache.Entry}, whose tracks
+ * read from the cache are only decoded when a Track is asked for.
+ */
+public class TrackAccessorsTest {
+
+    private static final Media.Track[] TRACKS = {
+            audio(10, "eng"),
+            Media.createSubtitleTrackFromNative("subt", null, 20, 0, 0, 0, "eng", null, "UTF-8"),
+            video(30, 1280, 720),
+            audio(11, "fra"),
+            Media.createUnknownTrackFromNative("data", null, 40, 0, 0, 0, null, null),
+            video(31, 640, 360),
+            Media.createSubtitleTrackFromNative("subt", null, 21, 0, 0, 0, "fra", null, null),
+            audio(12, null),
+    };
+
+    @Test
+    public void countTracksByType() {
+        assertEquals(3, Media.countTracks(TRACKS, Media.Track.Type.Audio));
+        assertEquals(2, Media.countTracks(TRACKS, Media.Track.Type.Video));
+        assertEquals(2, Media.countTracks(TRACKS, Media.Track.Type.Text));
+        assertEquals(1, Media.countTracks(TRACKS, Media.Track.Type.Unknown));
+        assertEquals(0, Media.countTracks(null, Media.Track.Type.Audio));
+    }
+
+    @Test
+    public void findTrackByTypeIndex() {
+        assertSame(TRACKS[0], Media.findTrack(TRACKS, Media.Track.Type.Audio, 0));
+        assertSame(TRACKS[3], Media.findTrack(TRACKS, Media.Track.Type.Audio, 1));
+        assertSame(TRACKS[7], Media.findTrack(TRACKS, Media.Track.Type.Audio, 2));
+        assertSame(TRACKS[5], Media.findTrack(TRACKS, Media.Track.Type.Video, 1));
+        assertSame(TRACKS[6], Media.findTrack(TRACKS, Media.Track.Type.Text, 1));
+        assertNull(Media.findTrack(TRACKS, Media.Track.Type.Audio, 3));
+        assertNull(Media.findTrack(TRACKS, Media.Track.Type.Audio, -1));
+        assertNull(Media.findTrack(null, Media.Track.Type.Audio, 0));
+    }
+
+    @Test
+    public void videoSizeIsTheFirstVideoTrack() {
+        assertEquals(1280, Media.getVideoWidth(TRACKS));
+        assertEquals(720, Media.getVideoHeight(TRACKS));
+
+        Media.Track[] audioOnly = {audio(1, null)};
+        assertEquals(0, Media.getVideoWidth(audioOnly));
+        assertEquals(0, Media.getVideoHeight(audioOnly));
+        assertEquals(0, Media.getVideoWidth(null));
+    }
+
+    @Test
+    public void entryAccessors() {
+        checkEntry(newEntry());
+    }
+
+    @Test
+    public void readEntryAccessors() throws IOException {
+        checkEntry(roundTrip(newEntry()));
+    }
+
+    @Test
+    public void readEntryCountsWithoutDecodingTracks() throws IOException {
+        MediaMetaCache.Entry entry = roundTrip(newEntry());
+
+        assertEquals(TRACKS.length, entry.getTrackCount());
+        assertEquals(3, entry.getTrackCount(Media.Track.Type.Audio));
+        assertEquals(1280, entry.getVideoWidth());
+        assertEquals(720, entry.getVideoHeight());
+        assertFalse(entry.hasDecodedTracks());
+
+        entry.getTrack(Media.Track.Type.Video, 0);
+        assertTrue(entry.hasDecodedTracks());
+    }
+
+    @Test
+    public void readEntryDecodesEveryField() throws IOException {
+        MediaMetaCache.Entry entry = roundTrip(newEntry());
+
+        Media.AudioTrack audio = (Media.AudioTrack) entry.getTrack(Media.Track.Type.Audio, 1);
+        assertEquals(11, audio.id);
+        assertEquals("fra", audio.language);
+        assertEquals(2, audio.channels);
+        assertEquals(48000, audio.rate);
+
+        Media.VideoTrack video = (Media.VideoTrack) entry.getTrack(Media.Track.Type.Video, 1);
+        assertEquals(31, video.id);
+        assertEquals(640, video.width);
+        assertEquals(360, video.height);
+        assertEquals(30000, video.frameRateNum);
+        assertEquals(1001, video.frameRateDen);
+
+        Media.SubtitleTrack subtitle =
+                (Media.SubtitleTrack) entry.getTrack(Media.Track.Type.Text, 0);
+        assertEquals("UTF-8", subtitle.encoding);
+        assertNull(((Media.SubtitleTrack) entry.getTrack(Media.Track.Type.Text, 1)).encoding);
+        assertTrue(entry.getTrack(Media.Track.Type.Unknown, 0) instanceof Media.UnknownTrack);
+    }
+
+    @Test
+    public void entryVideoSizeIsTheFirstVideoTrackEvenIfUnknown() throws IOException {
+        Media.Track[] tracks = {video(1, 0, 0), video(2, 1280, 720)};
+        MediaMetaCache.Entry entry = new MediaMetaCache.Entry(0, Media.Type.File,
+                new String[Media.Meta.MAX], tracks);
+
+        assertEquals(Media.getVideoWidth(tracks), entry.getVideoWidth());
+        assertEquals(Media.getVideoHeight(tracks), entry.getVideoHeight());
+        MediaMetaCache.Entry read = roundTrip(entry);
+        assertEquals(entry.getVideoWidth(), read.getVideoWidth());
+        assertEquals(entry.getVideoHeight(), read.getVideoHeight());
+    }
+
+    @Test
+    public void truncatedEntryIsRejected() throws IOException {
+        byte[] data = write(newEntry());
+        for (int length = 0; length < data.length; ++length) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(data, 0, truncated, 0, length);
+            try {
+                MediaMetaCache.readEntry(
+                        new DataInputStream(new ByteArrayInputStream(truncated)), truncated);
+                fail("entry truncated to " + length + " bytes was read");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private static void checkEntry(MediaMetaCache.Entry entry) {
+        assertEquals(TRACKS.length, entry.getTrackCount());
+        assertEquals(3, entry.getTrackCount(Media.Track.Type.Audio));
+        assertEquals(2, entry.getTrackCount(Media.Track.Type.Video));
+        assertEquals(2, entry.getTrackCount(Media.Track.Type.Text));
+        assertEquals(1, entry.getTrackCount(Media.Track.Type.Unknown));
+        assertEquals(1280, entry.getVideoWidth());
+        assertEquals(720, entry.getVideoHeight());
+
+        for (int type = Media.Track.Type.Unknown; type <= Media.Track.Type.Text; ++type) {
+            for (int i = 0; i <= Media.countTracks(TRACKS, type); ++i) {
+                Media.Track expected = Media.findTrack(TRACKS, type, i);
+                Media.Track actual = entry.getTrack(type, i);
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.type, actual.type);
+                    assertEquals(expected.id, actual.id);
+                    assertEquals(expected.codec, actual.codec);
+                }
+            }
+        }
+        assertNull(entry.getTrack(-1));
+        assertNull(entry.getTrack(TRACKS.length));
+    }
+
+    private static MediaMetaCache.Entry newEntry() {
+        String[] metas = new String[Media.Meta.MAX];
+        metas[Media.Meta.Title] = "title";
+        return new MediaMetaCache.Entry(60000, Media.Type.File, metas, TRACKS);
+    }
+
+    private static byte[] write(MediaMetaCache.Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MediaMetaCache.writeEntry(out, entry);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static MediaMetaCache.Entry roundTrip(MediaMetaCache.Entry entry) throws IOException {
+        byte[] data = write(entry);
+        MediaMetaCache.Entry read = MediaMetaCache.readEntry(
+                new DataInputStream(new ByteArrayInputStream(data)), data);
+        assertEquals(entry.getDuration(), read.getDuration());
+        assertEquals(entry.getMeta(Media.Meta.Title), read.getMeta(Media.Meta.Title));
+        return read;
+    }
+
+    private static Media.Track audio(int id, String language) {
+        return Media.createAudioTrackFromNative("mp4a", null, id, 0, 0, 128000, language, null,
+                2, 48000);
+    }
+
+    private static Media.Track video(int id, int width, int height) {
+        return Media.createVideoTrackFromNative("h264", null, id, 100, 40, 0, null, null,
+                height, width, 1, 1, 30000, 1001);
+    }
+}
@@ -0,0 +1,247 @@
+package org.videolan.libvlc.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Downloads from a local http server, with and without range support, and checks that a
+ * cancelled download is resumed by requesting only what is missing.
+ */
+public class DownloaderTest {
+
+    /* 3 segments of at least 1MiB, the last one uneven */
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 123;
+    private static final int SEGMENT_COUNT = 4;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    /* slow enough for the cancel to happen long before the end */
+    private static final long THROTTLE_MS = 20;
+    private static final long CANCEL_AFTER_BYTES = 64 * 1024;
+    private static final long TIMEOUT_MS = 20000;
+
+    /* notifies on the download thread */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] data = new byte[FILE_SIZE];
+    private HttpServer server;
+    private String url;
+    private volatile boolean ranges = true;
+    private volatile long throttleMs;
+    private final AtomicInteger requests = new AtomicInteger();
+    /* bytes requested since the last swap, counted when each request is received */
+    private final AtomicReference<AtomicLong> requestedBytes =
+            new AtomicReference<AtomicLong>(new AtomicLong());
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(0x5eed).nextBytes(data);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/file", new RangeHandler());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void cancelledDownloadResumesWithTheMissingBytesOnly() throws Exception {
+        File file = new File(folder.getRoot(), "video.mp4");
+        File journal = new File(file.getPath() + ".journal");
+
+        throttleMs = THROTTLE_MS;
+        FinishListener first = new FinishListener();
+        Downloader downloader = new Downloader(url, file.getPath(), SEGMENT_COUNT, first, DIRECT);
+        downloader.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (downloader.getDownloadedBytes() < CANCEL_AFTER_BYTES
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        downloader.cancel();
+        /* the journal is only written on the way out, before the first periodic save */
+        while (!journal.exists() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertTrue("cancel should keep the journal", journal.exists());
+        assertFalse("no callback after cancel", first.finished.await(500, TimeUnit.MILLISECONDS));
+        long resumedBytes = downloader.getDownloadedBytes();
+        assertTrue(resumedBytes >= CANCEL_AFTER_BYTES);
+        assertTrue(resumedBytes < FILE_SIZE);
+        assertEquals(FILE_SIZE, file.length());
+
+        throttleMs = 0;
+        AtomicLong resumeRequestedBytes = new AtomicLong();
+        requestedBytes.set(resumeRequestedBytes);
+        FinishListener second = new FinishListener();
+        new Downloader(url, file.getPath(), SEGMENT_COUNT, second, DIRECT).start();
+
+        assertTrue(second.await());
+        assertTrue(second.success);
+        /* the probe requests the first byte */
+        assertEquals(FILE_SIZE - resumedBytes + 1, resumeRequestedBytes.get());
+        assertArrayEquals(data, readFile(file));
+        assertFalse("journal should be deleted once done", journal.exists());
+    }
+
+    @Test
+    public void downloadsInASingleRequestWithoutRanges() throws Exception {
+        File file = new File(folder.getRoot(), "video.mp4");
+        ranges = false;
+        FinishListener listener = new FinishListener();
+        new Downloader(url, file.getPath(), SEGMENT_COUNT, listener, DIRECT).start();
+
+        assertTrue(listener.await());
+        assertTrue(listener.success);
+        /* the probe, then the download */
+        assertEquals(2, requests.get());
+        assertArrayEquals(data, readFile(file));
+        assertFalse(new File(file.getPath() + ".journal").exists());
+    }
+
+    @Test
+    public void restartsWithoutRangesDespiteAJournal() throws Exception {
+        File file = new File(folder.getRoot(), "video.mp4");
+        throttleMs = THROTTLE_MS;
+        Downloader downloader = new Downloader(url, file.getPath(), SEGMENT_COUNT,
+                new FinishListener(), DIRECT);
+        downloader.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (downloader.getDownloadedBytes() < CANCEL_AFTER_BYTES
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        downloader.cancel();
+        File journal = new File(file.getPath() + ".journal");
+        while (!journal.exists() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(journal.exists());
+
+        throttleMs = 0;
+        ranges = false;
+        FinishListener listener = new FinishListener();
+        new Downloader(url, file.getPath(), SEGMENT_COUNT, listener, DIRECT).start();
+
+        assertTrue(listener.await());
+        assertTrue(listener.success);
+        assertArrayEquals(data, readFile(file));
+        assertFalse(journal.exists());
+    }
+
+    @Test
+    public void missingFileFails() throws Exception {
+        File file = new File(folder.getRoot(), "missing.mp4");
+        FinishListener listener = new FinishListener();
+        new Downloader(url.replace("/file", "/missing"), file.getPath(), SEGMENT_COUNT,
+                listener, DIRECT).start();
+
+        assertTrue(listener.await());
+        assertFalse(listener.success);
+        assertFalse(new File(file.getPath() + ".journal").exists());
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Serves {@link #data}, honouring single "bytes=start-end" ranges when enabled.
+     */
+    private class RangeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            AtomicLong requested = requestedBytes.get();
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            int start = 0;
+            int end = FILE_SIZE - 1;
+            int code = 200;
+            if (range != null && ranges) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(bounds[0]);
+                if (bounds.length > 1 && !bounds[1].isEmpty())
+                    end = Integer.parseInt(bounds[1]);
+                code = 206;
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + start + "-" + end + "/" + FILE_SIZE);
+            }
+            requested.addAndGet(end - start + 1);
+            exchange.sendResponseHeaders(code, end - start + 1);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                for (int position = start; position <= end; position += CHUNK_SIZE) {
+                    out.write(data, position, Math.min(CHUNK_SIZE, end - position + 1));
+                    if (throttleMs > 0)
+                        Thread.sleep(throttleMs);
+                }
+            } catch (IOException ignored) {
+                /* disconnected by a cancel or a probe */
+            } catch (InterruptedException ignored) {
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static class FinishListener implements Downloader.Listener {
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean success;
+
+        @Override
+        public void onFinish(boolean success) {
+            this.success = success;
+            finished.countDown();
+        }
+
+        @Override
+        public void onProgress(long downloadedBytes, long totalBytes, long bytesPerSecond) {
+        }
+
+        boolean await() throws InterruptedException {
+            return finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
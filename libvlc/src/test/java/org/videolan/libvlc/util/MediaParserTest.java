@@ -0,0 +1,116 @@
+package org.videolan.libvlc.util;
+
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.videolan.libvlc.MediaMetaCache;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MediaParserTest {
+
+    private static final int ITERATIONS = 2000;
+
+    /* delivers on the thread that finishes the task, to make the race as tight as possible */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private MediaParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new MediaParser(null, null, 1, 0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        parser.release();
+    }
+
+    @Test
+    public void emptyTaskFinishesOnce() throws InterruptedException {
+        FinishCounter counter = new FinishCounter();
+        parser.parse(Collections.<Uri>emptyList(), counter, DIRECT);
+
+        assertTrue(counter.awaitFinished());
+        assertEquals(1, counter.finished.get());
+        assertEquals(0, counter.cancelled.get());
+    }
+
+    @Test
+    public void cancelRacingCompletionFinishesOnce() throws InterruptedException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            FinishCounter counter = new FinishCounter();
+            MediaParser.Task task = parser.parse(Collections.<Uri>emptyList(), counter, DIRECT);
+            task.cancel();
+
+            assertTrue(counter.awaitFinished());
+            /* let a second, wrong, terminal callback come in */
+            drainParserThread();
+            assertEquals("terminal callbacks of task " + i, 1, counter.finished.get());
+            assertEquals(task.isCancelled() ? 1 : 0, counter.cancelled.get());
+        }
+    }
+
+    @Test
+    public void cancelAfterCompletionIsIgnored() throws InterruptedException {
+        FinishCounter counter = new FinishCounter();
+        MediaParser.Task task = parser.parse(Collections.<Uri>emptyList(), counter, DIRECT);
+        assertTrue(counter.awaitFinished());
+
+        task.cancel();
+        drainParserThread();
+        assertEquals(1, counter.finished.get());
+        assertEquals(0, counter.cancelled.get());
+    }
+
+    private void drainParserThread() throws InterruptedException {
+        final CountDownLatch drained = new CountDownLatch(1);
+        parser.parse(Collections.<Uri>emptyList(), new FinishCounter() {
+            @Override
+            public void onFinished(boolean cancelled) {
+                drained.countDown();
+            }
+        }, DIRECT);
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class FinishCounter implements MediaParser.Listener {
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void onMediaParsed(Uri uri, int status, MediaMetaCache.Entry entry) {
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+        }
+
+        @Override
+        public void onFinished(boolean cancelled) {
+            finished.incrementAndGet();
+            if (cancelled)
+                this.cancelled.incrementAndGet();
+            latch.countDown();
+        }
+
+        boolean awaitFinished() throws InterruptedException {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
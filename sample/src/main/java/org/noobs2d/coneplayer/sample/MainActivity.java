@@ -17,18 +17,33 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class MainActivity
         extends AppCompatActivity
-        implements ConePlayer.PlayerStateChangeListener, ConePlayer.VideoListener {
+        implements ConePlayer.PlayerStateChangeListener, ConePlayer.VideoListener,
+        ConePlayerFactory.Callback {
 
     public static final String URL = "http://download.blender.org/peach/bigbuckbunny_movies/big_buck_bunny_720p_h264.mov";
-    public static final String STATES[] = {"STATE_IDLE", "STATE_PLAYING", "STATE_PAUSE", "STATE_STOP", "STATE_ENDED"};
+    public static final String STATES[] = {"STATE_IDLE", "STATE_PLAYING", "STATE_PAUSE", "STATE_STOP", "STATE_ENDED",
+            "STATE_BUFFERING", "STATE_ERROR"};
+    private static final long TIME_UPDATE_INTERVAL_MS = 500;
 
     private ConePlayerView conePlayerView;
     private ImageView previewImageView;
     private TextView timeTextView;
     private TextView stateTextView;
     private ConePlayer player;
+    // Set from the player request until the player is released, the player itself is only
+    // set once created.
+    private boolean playerRequested;
     private long time;
 
+    // State callbacks only fire on changes, so the time is polled while the player lives.
+    private final Runnable updateTimeAction = new Runnable() {
+        @Override
+        public void run() {
+            updateTime();
+            timeTextView.postDelayed(this, TIME_UPDATE_INTERVAL_MS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -38,6 +53,8 @@ public class MainActivity
         previewImageView = findViewById(R.id.preview_image_view);
         timeTextView = findViewById(R.id.time_text_view);
         stateTextView = findViewById(R.id.state_text_view);
+
+        ConePlayerFactory.warmUpAsync(this);
     }
 
     @Override
@@ -66,20 +83,38 @@ public class MainActivity
     }
 
     private void initializePlayer() {
+        if (playerRequested)
+            return;
+        playerRequested = true;
+        ConePlayerFactory.newConePlayer(this, this);
+    }
+
+    @Override
+    public void onConePlayerCreated(ConePlayer player) {
+        // The activity went to the background while the player was being created, or came
+        // back and already got the player of a newer request.
+        if (!playerRequested || this.player != null) {
+            player.release();
+            return;
+        }
+
         Uri uri = Uri.parse(URL);
 
-        player = ConePlayerFactory.newConePlayer(this);
+        this.player = player;
         player.prepare(new Media(uri));
         conePlayerView.setPlayer(player);
         player.addPlayerStateChangeListener(this);
         player.addVideoListener(this);
         player.play();
         player.seekTo(time);
+        updateTimeAction.run();
     }
 
     private void releasePlayer() {
+        playerRequested = false;
         if (player != null) {
             time = player.getCurrentPosition();
+            timeTextView.removeCallbacks(updateTimeAction);
 
             conePlayerView.setPlayer(null);
             player.removeVideoListener(this);
@@ -92,20 +127,21 @@ public class MainActivity
 
     @Override
     public void onPlayerStateChanged(int state) {
-        long millis = player.getCurrentPosition();
-        String position = String.format("%02d:%02d",
-                MILLISECONDS.toMinutes(millis),
-                MILLISECONDS.toSeconds(millis) - MINUTES.toSeconds(MILLISECONDS.toMinutes(millis))
-        );
+        updateTime();
+        stateTextView.setText(getString(R.string.state, STATES[state - 1]));
+    }
+
+    private void updateTime() {
+        String position = formatTime(player.getCurrentPosition());
+        String duration = formatTime(player.getDuration());
+        timeTextView.setText(getString(R.string.time, position, duration));
+    }
 
-        millis = player.getDuration();
-        String duration = String.format("%02d:%02d",
+    private static String formatTime(long millis) {
+        return String.format("%02d:%02d",
                 MILLISECONDS.toMinutes(millis),
                 MILLISECONDS.toSeconds(millis) - MINUTES.toSeconds(MILLISECONDS.toMinutes(millis))
         );
-
-        timeTextView.setText(getString(R.string.time, position, duration));
-        stateTextView.setText(getString(R.string.state, STATES[state - 1]));
     }
 
     @Override